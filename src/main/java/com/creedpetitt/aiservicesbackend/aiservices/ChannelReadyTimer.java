@@ -0,0 +1,63 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times each call from its start until gRPC puts its stream on a connected transport. On a
+ * connected channel that is close to zero; otherwise it is the wait for the channel to connect
+ * (DNS, TCP, TLS), whichever channel in the pool the call lands on and however often it
+ * reconnects. Calls that fail before getting a stream are not recorded.
+ *
+ * <p>A caller that wants its own call's wait puts an {@link AtomicLong} under
+ * {@link #WAIT_NANOS} in the gRPC {@link Context} it makes the call from.
+ */
+public class ChannelReadyTimer implements ClientInterceptor {
+
+    public static final Context.Key<AtomicLong> WAIT_NANOS = Context.key("channel-ready-wait-nanos");
+
+    private final Timer timer;
+
+    public ChannelReadyTimer(Timer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        long startedAt = System.nanoTime();
+        AtomicLong callerWait = WAIT_NANOS.get();
+        // gRPC may retry a call transparently on another stream; only the first one counts
+        AtomicBoolean recorded = new AtomicBoolean();
+        ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory() {
+            @Override
+            public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+                return new ClientStreamTracer() {
+                    @Override
+                    public void streamCreated(Attributes transportAttrs, Metadata headers) {
+                        if (recorded.compareAndSet(false, true)) {
+                            long waited = System.nanoTime() - startedAt;
+                            timer.record(waited, TimeUnit.NANOSECONDS);
+                            if (callerWait != null) {
+                                callerWait.set(waited);
+                            }
+                        }
+                    }
+                };
+            }
+        };
+        return next.newCall(method, callOptions.withStreamTracerFactory(tracerFactory));
+    }
+}
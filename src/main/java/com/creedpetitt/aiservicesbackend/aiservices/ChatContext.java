@@ -0,0 +1,21 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+// What a chat turn carries besides the new prompt: a rolling summary of older turns and the recent history
+public record ChatContext(
+    String summary,
+    List<Message> history
+) {
+    public static final ChatContext EMPTY = new ChatContext(null, List.of());
+
+    public ChatContext {
+        history = history == null ? List.of() : List.copyOf(history);
+    }
+
+    public boolean isEmpty() {
+        return (summary == null || summary.isBlank()) && history.isEmpty();
+    }
+}
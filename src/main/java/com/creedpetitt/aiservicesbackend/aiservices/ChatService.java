@@ -1,6 +1,7 @@
 package com.creedpetitt.aiservicesbackend.aiservices;
 
 import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
@@ -14,6 +15,7 @@ import org.springframework.util.MimeTypeUtils;
 import reactor.core.publisher.Flux;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,9 +42,21 @@ public abstract class ChatService {
     }
 
     public Flux<String> getResponseStream(String prompt) {
-        SystemMessage systemMessage = new SystemMessage(SYSTEM_PROMPT);
-        UserMessage userMessage = new UserMessage(prompt);
-        return getChatModel().stream(new Prompt(List.of(systemMessage, userMessage)))
+        return getResponseStream(ChatContext.EMPTY, prompt, null);
+    }
+
+    public Flux<String> getResponseStream(String prompt, String imageUrl) {
+        return getResponseStream(ChatContext.EMPTY, prompt, imageUrl);
+    }
+
+    // context: rolling summary plus earlier turns (oldest first), already trimmed to the model's budget
+    public Flux<String> getResponseStream(ChatContext context, String prompt, String imageUrl) {
+        List<Message> messages = new ArrayList<>(context.history().size() + 2);
+        messages.add(new SystemMessage(buildSystemPrompt(context.summary())));
+        messages.addAll(context.history());
+        messages.add(buildUserMessage(prompt, imageUrl));
+
+        return getChatModel().stream(new Prompt(messages))
                 .mapNotNull(chatResponse ->
                         Optional.ofNullable(chatResponse)
                                 .map(ChatResponse::getResult)
@@ -51,22 +65,39 @@ public abstract class ChatService {
                                 .orElse(null));
     }
 
-    public Flux<String> getResponseStream(String prompt, String imageUrl) {
+    // Blocking single-shot call for background work such as summarization
+    public String generate(String systemPrompt, String userPrompt) {
+        ChatResponse response = getChatModel().call(new Prompt(List.of(
+                new SystemMessage(systemPrompt), new UserMessage(userPrompt))));
+        return Optional.ofNullable(response)
+                .map(ChatResponse::getResult)
+                .map(Generation::getOutput)
+                .map(AbstractMessage::getText)
+                .orElse("");
+    }
+
+    // The system prompt a turn with this context is sent with
+    public String getSystemPrompt(ChatContext context) {
+        return buildSystemPrompt(context.summary());
+    }
+
+    private String buildSystemPrompt(String summary) {
+        if (summary == null || summary.isBlank()) {
+            return SYSTEM_PROMPT;
+        }
+        return SYSTEM_PROMPT + "\n\nSummary of the earlier conversation:\n" + summary;
+    }
+
+    private UserMessage buildUserMessage(String prompt, String imageUrl) {
+        if (imageUrl == null || imageUrl.trim().isEmpty()) {
+            return new UserMessage(prompt);
+        }
         try {
             MimeType mimeType = detectMimeType(imageUrl);
-            var userMessage = UserMessage.builder()
+            return UserMessage.builder()
                     .text(prompt)
                     .media(List.of(new Media(mimeType, new UrlResource(imageUrl))))
                     .build();
-            SystemMessage systemMessage = new SystemMessage(SYSTEM_PROMPT);
-
-            return getChatModel().stream(new Prompt(List.of(systemMessage, userMessage)))
-                    .mapNotNull(chatResponse ->
-                            Optional.ofNullable(chatResponse)
-                                    .map(ChatResponse::getResult)
-                                    .map(Generation::getOutput)
-                                    .map(AbstractMessage::getText)
-                                    .orElse(null));
         } catch (MalformedURLException e) {
             throw new RuntimeException("Invalid image URL: " + imageUrl, e);
         }
@@ -1,8 +1,24 @@
 package com.creedpetitt.aiservicesbackend.aiservices;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface ImageService {
+    // Imagen returns at most 4 samples per request
+    int MAX_IMAGES_PER_REQUEST = 4;
+
     String generateImage(String prompt) throws IOException;
+
+    // count variations of one prompt in as few provider round-trips as the model allows. May
+    // return fewer than count if some of them failed, but never none
+    default List<String> generateImages(String prompt, int count) throws IOException {
+        List<String> imageUrls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            imageUrls.add(generateImage(prompt));
+        }
+        return imageUrls;
+    }
+
     String getImageModel();
 }
@@ -1,24 +1,40 @@
 package com.creedpetitt.aiservicesbackend.aiservices;
 
 import com.google.cloud.aiplatform.v1.*;
+import io.grpc.Context;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ImagenService implements ImageService {
 
-    @Value("${spring.cloud.gcp.project-id}")
-    private String projectId;
-
-    @Value("${spring.ai.vertex.ai.gemini.location:us-central1}")
-    private String location;
-
-    @Value("${spring.cloud.gcp.storage.bucket}")
-    private String storageBucket;
+    // Shared and long-lived (see ImagenConfig); created on the first request
+    private final ObjectProvider<PredictionServiceClient> predictionServiceClient;
+    private final MeterRegistry meterRegistry;
+    private final String projectId;
+    private final String location;
+    private final String storageBucket;
+
+    public ImagenService(ObjectProvider<PredictionServiceClient> predictionServiceClient,
+                         MeterRegistry meterRegistry,
+                         @Value("${spring.cloud.gcp.project-id}") String projectId,
+                         @Value("${spring.ai.vertex.ai.gemini.location:us-central1}") String location,
+                         @Value("${spring.cloud.gcp.storage.bucket}") String storageBucket) {
+        this.predictionServiceClient = predictionServiceClient;
+        this.meterRegistry = meterRegistry;
+        this.projectId = projectId;
+        this.location = location;
+        this.storageBucket = storageBucket;
+    }
 
     @Override
     public String getImageModel() {
@@ -27,56 +43,78 @@ public class ImagenService implements ImageService {
 
     @Override
     public String generateImage(String prompt) throws IOException {
-        String endpoint = String.format("%s-aiplatform.googleapis.com:443", location);
-        PredictionServiceSettings settings = PredictionServiceSettings.newBuilder()
-                .setEndpoint(endpoint)
-                .build();
+        return generateImages(prompt, 1).get(0);
+    }
 
-        try (PredictionServiceClient client = PredictionServiceClient.create(settings)) {
-            String modelName = String.format(
-                    "projects/%s/locations/%s/publishers/google/models/imagen-3.0-generate-001",
-                    projectId, location
-            );
-
-            // Parameters with Cloud Storage URI
-            com.google.protobuf.Struct.Builder parametersBuilder = com.google.protobuf.Struct.newBuilder();
-            parametersBuilder.putFields("sampleCount",
-                com.google.protobuf.Value.newBuilder().setNumberValue(1).build());
-            parametersBuilder.putFields("storageUri",
-                com.google.protobuf.Value.newBuilder()
-                    .setStringValue("gs://" + storageBucket + "/images/")
-                    .build());
-
-            // Instance with prompt
-            com.google.protobuf.Struct.Builder instanceBuilder = com.google.protobuf.Struct.newBuilder();
-            instanceBuilder.putFields("prompt",
-                com.google.protobuf.Value.newBuilder().setStringValue(prompt).build());
-
-            List<com.google.protobuf.Value> instances = new ArrayList<>();
-            instances.add(com.google.protobuf.Value.newBuilder()
-                .setStructValue(instanceBuilder.build())
+    // All variations come from one Predict call with sampleCount set
+    @Override
+    public List<String> generateImages(String prompt, int count) throws IOException {
+        PredictionServiceClient client = predictionServiceClient.getObject();
+        String modelName = String.format(
+                "projects/%s/locations/%s/publishers/google/models/imagen-3.0-generate-001",
+                projectId, location
+        );
+
+        // Parameters with Cloud Storage URI
+        com.google.protobuf.Struct.Builder parametersBuilder = com.google.protobuf.Struct.newBuilder();
+        parametersBuilder.putFields("sampleCount",
+            com.google.protobuf.Value.newBuilder().setNumberValue(count).build());
+        parametersBuilder.putFields("storageUri",
+            com.google.protobuf.Value.newBuilder()
+                .setStringValue("gs://" + storageBucket + "/images/")
                 .build());
 
-            PredictRequest request = PredictRequest.newBuilder()
-                    .setEndpoint(modelName)
-                    .addAllInstances(instances)
-                    .setParameters(com.google.protobuf.Value.newBuilder()
-                        .setStructValue(parametersBuilder.build())
-                        .build())
-                    .build();
+        // Instance with prompt
+        com.google.protobuf.Struct.Builder instanceBuilder = com.google.protobuf.Struct.newBuilder();
+        instanceBuilder.putFields("prompt",
+            com.google.protobuf.Value.newBuilder().setStringValue(prompt).build());
+
+        List<com.google.protobuf.Value> instances = new ArrayList<>();
+        instances.add(com.google.protobuf.Value.newBuilder()
+            .setStructValue(instanceBuilder.build())
+            .build());
+
+        PredictRequest request = PredictRequest.newBuilder()
+                .setEndpoint(modelName)
+                .addAllInstances(instances)
+                .setParameters(com.google.protobuf.Value.newBuilder()
+                    .setStructValue(parametersBuilder.build())
+                    .build())
+                .build();
 
-            PredictResponse response = client.predict(request);
+        // Model time only: what the call waited for a connected channel is in imagen.channel.ready
+        String outcome = "error";
+        AtomicLong channelWait = new AtomicLong();
+        Context previous = Context.current().withValue(ChannelReadyTimer.WAIT_NANOS, channelWait).attach();
+        long startedAt = System.nanoTime();
+        PredictResponse response;
+        try {
+            response = client.predict(request);
+            outcome = "success";
+        } finally {
+            long elapsed = System.nanoTime() - startedAt;
+            Context.current().detach(previous);
+            Timer.builder("imagen.predict")
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(Math.max(0, elapsed - channelWait.get()), TimeUnit.NANOSECONDS);
+        }
 
-            if (response.getPredictionsCount() > 0) {
-                com.google.protobuf.Struct predictionStruct = response.getPredictions(0).getStructValue();
+        List<String> imageUrls = new ArrayList<>(response.getPredictionsCount());
+        for (com.google.protobuf.Value prediction : response.getPredictionsList()) {
+            com.google.protobuf.Struct predictionStruct = prediction.getStructValue();
 
-                if (predictionStruct.containsFields("gcsUri")) {
-                    String gcsUri = predictionStruct.getFieldsOrThrow("gcsUri").getStringValue();
-                    return gcsUri.replace("gs://", "https://storage.googleapis.com/");
-                }
+            if (predictionStruct.containsFields("gcsUri")) {
+                String gcsUri = predictionStruct.getFieldsOrThrow("gcsUri").getStringValue();
+                imageUrls.add(gcsUri.replace("gs://", "https://storage.googleapis.com/"));
             }
+        }
 
+        // Samples blocked by safety filters are left out, so there may be fewer than requested
+        if (imageUrls.isEmpty()) {
             throw new RuntimeException("No image URL in response");
         }
+        return imageUrls;
     }
 }
@@ -6,6 +6,13 @@ import org.springframework.ai.openai.OpenAiImageModel;
 import org.springframework.ai.image.ImagePrompt;
 import org.springframework.ai.image.ImageResponse;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Service("openAIService")
 public class OpenAIService extends ChatService implements ImageService {
@@ -37,4 +44,27 @@ public class OpenAIService extends ChatService implements ImageService {
         ImageResponse response = imageModel.call(new ImagePrompt(prompt));
         return response.getResult().getOutput().getUrl();
     }
+
+    // DALL-E 3 returns one image per request, so the requests run side by side
+    @Override
+    public List<String> generateImages(String prompt, int count) {
+        if (count == 1) {
+            return List.of(generateImage(prompt));
+        }
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<String> imageUrls = Flux.range(0, count)
+                .flatMap(i -> Mono.fromCallable(() -> generateImage(prompt))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(error -> {
+                            errors.add(error);
+                            return Mono.empty();
+                        }), count)
+                .collectList()
+                .block();
+        if (imageUrls == null || imageUrls.isEmpty()) {
+            Throwable error = errors.peek();
+            throw error instanceof RuntimeException runtime ? runtime : new RuntimeException("Image generation failed", error);
+        }
+        return imageUrls;
+    }
 }
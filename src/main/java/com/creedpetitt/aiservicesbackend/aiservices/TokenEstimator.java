@@ -0,0 +1,44 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+/**
+ * Cheap, allocation-free token estimate for budgeting prompts. Approximates BPE tokenizers:
+ * roughly one token per four characters of a word, one per punctuation mark, and one per
+ * CJK character. Not exact, but close enough to keep prompts inside a model's window.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {}
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) && !isCjk(c)) {
+                wordLength++;
+                continue;
+            }
+            tokens += wordTokens(wordLength);
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + wordTokens(wordLength);
+    }
+
+    private static int wordTokens(int length) {
+        return (length + 3) / 4;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,26 @@
+package com.creedpetitt.aiservicesbackend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Threads that deliver streamed chunks to clients. {@code spring.threads.virtual.enabled} already
+ * moves Tomcat request handling and @Async/@Scheduled work onto virtual threads; with it on,
+ * SSE writes (which block on the client socket) also hop off the provider's Reactor thread onto
+ * a virtual thread per stream. With it off, chunks are still written on the provider thread.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler streamScheduler(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            return Schedulers.fromExecutor(new VirtualThreadTaskExecutor("sse-"));
+        }
+        return Schedulers.immediate();
+    }
+}
@@ -0,0 +1,72 @@
+package com.creedpetitt.aiservicesbackend.config;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChannelReadyTimer;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.cloud.aiplatform.v1.PredictionServiceClient;
+import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * One Vertex AI prediction client for the whole application: its gRPC channels, TLS sessions
+ * and credentials are set up once and reused by every Imagen request instead of per call.
+ * Channels connect lazily, so {@code imagen.client.setup} covers only building the client;
+ * what each call waits for a channel to connect is {@code imagen.channel.ready}, and
+ * {@code imagen.predict} is recorded net of it.
+ */
+@Configuration
+public class ImagenConfig {
+
+    // Built on the first image request, so the app starts without Vertex AI credentials; closed on shutdown
+    @Bean(destroyMethod = "close")
+    @Lazy
+    public PredictionServiceClient predictionServiceClient(
+            @Value("${spring.ai.vertex.ai.gemini.location:us-central1}") String location,
+            @Value("${app.imagen.channel-count:2}") int channelCount,
+            @Value("${app.imagen.keep-alive:PT1M}") Duration keepAlive,
+            @Value("${app.imagen.keep-alive-timeout:PT10S}") Duration keepAliveTimeout,
+            @Value("${app.imagen.deadline:PT2M}") Duration deadline,
+            MeterRegistry meterRegistry) throws IOException {
+        String endpoint = String.format("%s-aiplatform.googleapis.com:443", location);
+        InstantiatingGrpcChannelProvider channels = PredictionServiceSettings.defaultGrpcTransportProviderBuilder()
+                .setEndpoint(endpoint)
+                .setChannelPoolSettings(ChannelPoolSettings.staticallySized(channelCount))
+                .setKeepAliveTime(threeten(keepAlive))
+                .setKeepAliveTimeout(threeten(keepAliveTimeout))
+                .setKeepAliveWithoutCalls(true)
+                .setChannelConfigurator(builder -> builder.intercept(
+                        new ChannelReadyTimer(Timer.builder("imagen.channel.ready")
+                                .publishPercentileHistogram()
+                                .register(meterRegistry))))
+                .build();
+
+        PredictionServiceSettings.Builder settings = PredictionServiceSettings.newBuilder()
+                .setEndpoint(endpoint)
+                .setTransportChannelProvider(channels);
+        // One deadline per image, with no retries: a second attempt would generate (and bill) another image
+        settings.predictSettings().setRetrySettings(RetrySettings.newBuilder()
+                .setInitialRpcTimeout(threeten(deadline))
+                .setMaxRpcTimeout(threeten(deadline))
+                .setTotalTimeout(threeten(deadline))
+                .setMaxAttempts(1)
+                .build());
+
+        Timer.Sample setup = Timer.start(meterRegistry);
+        PredictionServiceClient client = PredictionServiceClient.create(settings.build());
+        setup.stop(meterRegistry.timer("imagen.client.setup"));
+        return client;
+    }
+
+    private static org.threeten.bp.Duration threeten(Duration duration) {
+        return org.threeten.bp.Duration.ofNanos(duration.toNanos());
+    }
+}
@@ -0,0 +1,46 @@
+package com.creedpetitt.aiservicesbackend.config;
+
+import com.creedpetitt.aiservicesbackend.ratelimit.DistributedRateLimiter;
+import com.creedpetitt.aiservicesbackend.ratelimit.JdbcRateLimitStore;
+import com.creedpetitt.aiservicesbackend.ratelimit.LocalRateLimiter;
+import com.creedpetitt.aiservicesbackend.ratelimit.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+public class RateLimitConfig {
+
+    @Value("${app.rate-limit.max-keys:100000}")
+    private long maxKeys;
+
+    @Value("${app.rate-limit.idle-timeout:PT5M}")
+    private Duration idleTimeout;
+
+    // Default: limits are enforced per node
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.backend", havingValue = "local", matchIfMissing = true)
+    public RateLimiter localRateLimiter() {
+        return new LocalRateLimiter(maxKeys, idleTimeout);
+    }
+
+    // Limits shared across replicas through the database
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.backend", havingValue = "distributed")
+    public JdbcRateLimitStore jdbcRateLimitStore(JdbcTemplate jdbcTemplate) {
+        return new JdbcRateLimitStore(jdbcTemplate, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.backend", havingValue = "distributed")
+    public RateLimiter distributedRateLimiter(JdbcRateLimitStore store,
+                                              @Value("${app.rate-limit.lease-size:10}") long leaseSize) {
+        return new DistributedRateLimiter(store, new LocalRateLimiter(maxKeys, idleTimeout),
+                Clock.systemUTC(), leaseSize, maxKeys);
+    }
+}
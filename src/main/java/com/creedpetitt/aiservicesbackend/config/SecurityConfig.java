@@ -35,6 +35,8 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        .requestMatchers("/actuator/health", "/actuator/info").permitAll()
+                        .requestMatchers("/actuator/**").authenticated() // Metrics carry traffic and rate-limit data
                         .requestMatchers("OPTIONS", "/**").permitAll() // Allow all OPTIONS requests for CORS
                         .requestMatchers("/api/conversations/*/messages").permitAll() // Allow anonymous chat
                         .requestMatchers("/api/conversations").authenticated() // Require auth for conversation management
@@ -0,0 +1,44 @@
+package com.creedpetitt.aiservicesbackend.config;
+
+import com.creedpetitt.aiservicesbackend.semanticcache.EmbeddingProvider;
+import com.creedpetitt.aiservicesbackend.semanticcache.ModelEmbeddingProvider;
+import com.creedpetitt.aiservicesbackend.semanticcache.SemanticCache;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+// Only built when the semantic cache is on; it then refuses to start without an embedding model
+@Configuration
+@ConditionalOnProperty(name = "app.chat.semantic-cache.enabled", havingValue = "true")
+public class SemanticCacheConfig {
+
+    @Bean
+    public EmbeddingProvider embeddingProvider(ObjectProvider<EmbeddingModel> embeddingModels,
+                                               @Value("${app.embeddings.dimensions:512}") int dimensions) {
+        EmbeddingModel embeddingModel = embeddingModels.getIfUnique();
+        if (embeddingModel == null) {
+            throw new IllegalStateException(
+                    "app.chat.semantic-cache.enabled=true needs exactly one Spring AI EmbeddingModel bean");
+        }
+        return new ModelEmbeddingProvider(embeddingModel, dimensions);
+    }
+
+    @Bean
+    public SemanticCache semanticCache(EmbeddingProvider embeddingProvider,
+                                       @Value("${app.chat.semantic-cache.max-entries:10000}") int maxEntries,
+                                       @Value("${app.chat.semantic-cache.ttl:PT24H}") Duration ttl,
+                                       @Value("${app.chat.semantic-cache.similarity-threshold:0.92}") float similarityThreshold,
+                                       @Value("${app.chat.semantic-cache.hnsw.m:16}") int m,
+                                       @Value("${app.chat.semantic-cache.hnsw.ef-construction:100}") int efConstruction,
+                                       @Value("${app.chat.semantic-cache.hnsw.ef-search:64}") int efSearch) {
+        return new SemanticCache(embeddingProvider,
+                new SemanticCache.Settings(maxEntries, ttl, similarityThreshold, m, efConstruction, efSearch),
+                Clock.systemUTC());
+    }
+}
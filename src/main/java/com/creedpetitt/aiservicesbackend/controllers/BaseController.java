@@ -2,6 +2,7 @@ package com.creedpetitt.aiservicesbackend.controllers;
 
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import com.creedpetitt.aiservicesbackend.security.UserPrincipal;
 import com.creedpetitt.aiservicesbackend.services.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
@@ -17,18 +18,23 @@ public abstract class BaseController {
         this.userRepository = userRepository;
     }
 
-    protected AppUser getAuthenticatedUser(Authentication authentication) {
-        // Get the detached user from authentication
-        AppUser detachedUser = (AppUser) authentication.getPrincipal();
-        // Fetch fresh, managed entity from current Hibernate session
-        return userRepository.findById(detachedUser.getId())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+    protected UserPrincipal getAuthenticatedUser(Authentication authentication) {
+        // FirebaseFilter already resolved the user; no second lookup here
+        if (!(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found");
+        }
+        return principal;
     }
 
-    protected AppUser requireAuthenticatedUser(Authentication authentication) {
+    protected UserPrincipal requireAuthenticatedUser(Authentication authentication) {
         if (authentication == null) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authentication required");
         }
         return getAuthenticatedUser(authentication);
     }
+
+    // Uninitialized proxy for associations and id-based queries - does not hit the database
+    protected AppUser getUserReference(UserPrincipal principal) {
+        return userRepository.getReferenceById(principal.id());
+    }
 }
@@ -1,31 +1,34 @@
 package com.creedpetitt.aiservicesbackend.controllers;
 
-import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
-import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
 import com.creedpetitt.aiservicesbackend.dto.ConversationDetailDto;
 import com.creedpetitt.aiservicesbackend.dto.ConversationDto;
-import com.creedpetitt.aiservicesbackend.dto.MessageDto;
+import com.creedpetitt.aiservicesbackend.dto.ConversationPageDto;
 import com.creedpetitt.aiservicesbackend.dto.StreamMessageRequestDto;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.models.Conversation;
-import com.creedpetitt.aiservicesbackend.models.Message;
 import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import com.creedpetitt.aiservicesbackend.security.UserPrincipal;
+import com.creedpetitt.aiservicesbackend.services.ChatStreamService;
+import com.creedpetitt.aiservicesbackend.services.ConversationExporter;
 import com.creedpetitt.aiservicesbackend.services.ConversationService;
 import com.creedpetitt.aiservicesbackend.services.MessageService;
-import com.creedpetitt.aiservicesbackend.services.RateLimitingService;
+import com.creedpetitt.aiservicesbackend.services.StreamSessionRegistry;
+import com.creedpetitt.aiservicesbackend.services.StreamSessionRegistry.StreamEvent;
 import com.creedpetitt.aiservicesbackend.services.UserService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
-
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import reactor.core.scheduler.Scheduler;
 
 // All exceptions are handled globally via GlobalExceptionHandler
 @RestController
@@ -34,128 +37,123 @@ public class ChatController extends BaseController {
 
     private final ConversationService conversationService;
     private final MessageService messageService;
-    private final ChatServiceFactory chatServiceFactory;
-    private final RateLimitingService rateLimitingService;
+    private final ChatStreamService chatStreamService;
+    private final ConversationExporter conversationExporter;
+    private final StreamSessionRegistry streamSessions;
+    private final Scheduler streamScheduler;
 
     public ChatController(ConversationService conversationService,
                          MessageService messageService,
                          UserService userService,
                          UserRepository userRepository,
-                         ChatServiceFactory chatServiceFactory,
-                         RateLimitingService rateLimitingService) {
+                         ChatStreamService chatStreamService,
+                         ConversationExporter conversationExporter,
+                         StreamSessionRegistry streamSessions,
+                         Scheduler streamScheduler) {
         super(userService, userRepository);
         this.conversationService = conversationService;
         this.messageService = messageService;
-        this.chatServiceFactory = chatServiceFactory;
-        this.rateLimitingService = rateLimitingService;
+        this.chatStreamService = chatStreamService;
+        this.conversationExporter = conversationExporter;
+        this.streamSessions = streamSessions;
+        this.streamScheduler = streamScheduler;
     }
 
     @GetMapping("/conversations")
-    public ResponseEntity<List<ConversationDto>> getConversations(Authentication authentication) {
-        AppUser user = requireAuthenticatedUser(authentication);
-        List<Conversation> conversations = conversationService.getUserConversations(user);
-
-        List<ConversationDto> response = conversations.stream()
-                .map(ConversationDto::fromEntity)
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(response);
+    public ResponseEntity<ConversationPageDto> getConversations(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "true") boolean includePreview,
+            Authentication authentication) {
+        AppUser user = getUserReference(requireAuthenticatedUser(authentication));
+        return ResponseEntity.ok(conversationService.getConversationPage(user, cursor, limit, includePreview));
     }
 
     @GetMapping("/conversations/{id}")
-    public ResponseEntity<ConversationDetailDto> getConversation(@PathVariable Long id, Authentication authentication) {
-        AppUser user = requireAuthenticatedUser(authentication);
+    public ResponseEntity<ConversationDetailDto> getConversation(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
+        AppUser user = getUserReference(requireAuthenticatedUser(authentication));
         Conversation conversation = conversationService.getConversation(id, user)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
 
-        List<Message> messages = messageService.getConversationMessages(conversation);
-
-        List<MessageDto> messageList = messages.stream()
-                .map(MessageDto::fromEntity)
-                .collect(Collectors.toList());
+        MessageService.MessagePage page = messageService.getMessagePage(conversation, before, after, limit);
 
         ConversationDetailDto response = new ConversationDetailDto(
                 ConversationDto.fromEntity(conversation),
-                messageList
+                page.messages(),
+                page.hasMore()
         );
 
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping(value = "/conversations/{id}/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportConversation(@PathVariable Long id, Authentication authentication) {
+        AppUser user = getUserReference(requireAuthenticatedUser(authentication));
+        ConversationDto conversation = conversationService.getConversation(id, user)
+                .map(ConversationDto::fromEntity)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
+
+        StreamingResponseBody body = out -> conversationExporter.writeJson(conversation, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"conversation-" + id + ".json\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
     @PostMapping(value = "/conversations/{id}/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamMessage(
             @PathVariable Long id,
             @RequestBody StreamMessageRequestDto request,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
             Authentication authentication) {
 
         SseEmitter emitter = new SseEmitter(300000L); // 5 minute timeout
 
-        AppUser user = requireAuthenticatedUser(authentication);
-
-        if (!rateLimitingService.isUserAllowed(user)) {
-            emitter.completeWithError(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Rate limit exceeded for user."));
-            return emitter;
-        }
-        userService.incrementMessageCount(user);
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        AppUser user = getUserReference(principal);
 
-        String content = request.content();
-        if (content == null || content.trim().isEmpty()) {
-            emitter.completeWithError(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Content cannot be empty."));
+        Flux<StreamEvent> events;
+        try {
+            events = openStream(id, principal, user, request, lastEventId).publishOn(streamScheduler);
+        } catch (ResponseStatusException e) {
+            emitter.completeWithError(e);
             return emitter;
         }
 
-        String imageUrl = request.imageUrl();
-        String aiModel = request.aiModel();
-
-        if (aiModel == null || aiModel.trim().isEmpty()) {
-            if (id != 0) {
-                Optional<Conversation> existingConv = conversationService.getConversation(id, user);
-                if (existingConv.isEmpty()) {
-                    emitter.completeWithError(new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found."));
-                    return emitter;
-                }
-                aiModel = existingConv.get().getAiModel();
-            } else {
-                emitter.completeWithError(new ResponseStatusException(HttpStatus.BAD_REQUEST, "aiModel must be provided for new conversations."));
-                return emitter;
-            }
-        }
-
-        ChatService chatService = chatServiceFactory.getChatService(aiModel);
-        if (chatService == null) {
-            emitter.completeWithError(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid aiModel specified."));
-            return emitter;
-        }
-
-        String title = generateTitle(content);
-        final Conversation finalConversation = conversationService.getOrCreateConversation(id, user, title, aiModel);
-
-        if (imageUrl != null && !imageUrl.trim().isEmpty()) {
-            messageService.addUserMessage(finalConversation, user, content, imageUrl);
-        } else {
-            messageService.addUserMessage(finalConversation, user, content);
-        }
-
-        final Long conversationId = finalConversation.getId();
-        final AppUser finalUser = user;
-        final String finalAiModel = aiModel;
+        pipe(events, emitter);
+        return emitter;
+    }
 
-        // Subscribe to the Flux stream and send chunks via SseEmitter
-        Flux<String> responseStream;
-        if (imageUrl != null && !imageUrl.trim().isEmpty()) {
-            responseStream = chatService.getResponseStream(content, imageUrl);
-        } else {
-            responseStream = chatService.getResponseStream(content);
+    // A reconnect carrying Last-Event-ID resumes the stream it was reading instead of starting a new turn
+    private Flux<StreamEvent> openStream(Long id, UserPrincipal principal, AppUser user,
+                                         StreamMessageRequestDto request, String lastEventId) {
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return streamSessions.resume(lastEventId, principal.id());
         }
-        final StringBuilder fullResponse = new StringBuilder();
+        return streamSessions.start(principal.id(), chatStreamService.startStream(id, principal.id(), user, request));
+    }
 
-        responseStream.subscribe(
-            chunk -> {
+    // Sends each event with its resumable id. Disconnects, timeouts and send failures dispose the
+    // subscription; once no client is attached the session cancels the provider call instead of
+    // letting it generate unread tokens.
+    void pipe(Flux<StreamEvent> events, SseEmitter emitter) {
+        Disposable.Swap upstream = Disposables.swap();
+        emitter.onCompletion(upstream::dispose);
+        emitter.onTimeout(upstream::dispose);
+        emitter.onError(error -> upstream.dispose());
+
+        upstream.update(events.subscribe(
+            event -> {
                 try {
-                    fullResponse.append(chunk);
-                    emitter.send(SseEmitter.event().data(chunk));
+                    emitter.send(SseEmitter.event().id(event.id()).data(event.data()));
                 } catch (Exception e) {
-                    // Client disconnected or emitter already completed - ignore
+                    // Client disconnected or emitter already completed
+                    upstream.dispose();
                     try {
                         emitter.completeWithError(e);
                     } catch (IllegalStateException ignored) {
@@ -171,35 +169,35 @@ public class ChatController extends BaseController {
                 }
             },
             () -> {
-                // Save assistant message when streaming completes
-                if (!fullResponse.isEmpty()) {
-                    conversationService.getConversation(conversationId, finalUser)
-                            .ifPresent(conv -> messageService.addAssistantMessage(conv, finalUser, fullResponse.toString(), finalAiModel));
-                }
                 try {
                     emitter.complete();
                 } catch (IllegalStateException ignored) {
                     // Emitter already completed, ignore
                 }
             }
-        );
+        ));
+    }
 
-        return emitter;
+    // Same turn as streamMessage, returned as a Flux: MVC writes each event on its async executor
+    // and disposes the subscription when the client disconnects or the request times out.
+    @PostMapping(value = "/conversations/{id}/messages/stream-reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamMessageReactive(
+            @PathVariable Long id,
+            @RequestBody StreamMessageRequestDto request,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            Authentication authentication) {
+
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        AppUser user = getUserReference(principal);
+
+        return openStream(id, principal, user, request, lastEventId)
+                .map(event -> ServerSentEvent.builder(event.data()).id(event.id()).build());
     }
 
     @DeleteMapping("/conversations/{id}")
     public ResponseEntity<Void> deleteConversation(@PathVariable Long id, Authentication authentication) {
-        AppUser user = requireAuthenticatedUser(authentication);
+        AppUser user = getUserReference(requireAuthenticatedUser(authentication));
         conversationService.deleteConversation(id, user);
         return ResponseEntity.noContent().build();
     }
-
-    // Helper methods
-    private String generateTitle(String content) {
-        String title = content.trim();
-        if (title.length() > 50) {
-            title = title.substring(0, 47) + "...";
-        }
-        return title;
-    }
 }
\ No newline at end of file
@@ -3,22 +3,30 @@ package com.creedpetitt.aiservicesbackend.controllers;
 import com.creedpetitt.aiservicesbackend.aiservices.ImageService;
 import com.creedpetitt.aiservicesbackend.aiservices.ImageServiceFactory;
 import com.creedpetitt.aiservicesbackend.dto.ImageGenerationResponseDto;
+import com.creedpetitt.aiservicesbackend.dto.ImageJobDto;
 import com.creedpetitt.aiservicesbackend.dto.MessageDto;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
-import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
 import com.creedpetitt.aiservicesbackend.models.Message;
 import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
-import com.creedpetitt.aiservicesbackend.services.ConversationService;
+import com.creedpetitt.aiservicesbackend.security.UserPrincipal;
+import com.creedpetitt.aiservicesbackend.services.ImageJobExecutor;
+import com.creedpetitt.aiservicesbackend.services.ImageJobService;
 import com.creedpetitt.aiservicesbackend.services.MessageService;
 import com.creedpetitt.aiservicesbackend.services.RateLimitingService;
 import com.creedpetitt.aiservicesbackend.services.UserService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
-import java.time.LocalDateTime;
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -29,32 +37,92 @@ public class ImageController extends BaseController {
     private final ImageServiceFactory imageServiceFactory;
     private final RateLimitingService rateLimitingService;
     private final MessageService messageService;
-    private final ConversationService conversationService;
+    private final ImageJobService imageJobService;
+    private final ImageJobExecutor imageJobExecutor;
+    private final Duration syncWait;
 
     public ImageController(ImageServiceFactory imageServiceFactory,
                           RateLimitingService rateLimitingService,
                           UserService userService,
                           UserRepository userRepository,
                           MessageService messageService,
-                          ConversationService conversationService) {
+                          ImageJobService imageJobService,
+                          ImageJobExecutor imageJobExecutor,
+                          // Same ceiling as the async request timeout
+                          @Value("${spring.mvc.async.request-timeout:PT5M}") Duration syncWait) {
         super(userService, userRepository);
         this.imageServiceFactory = imageServiceFactory;
         this.rateLimitingService = rateLimitingService;
         this.messageService = messageService;
-        this.conversationService = conversationService;
+        this.imageJobService = imageJobService;
+        this.imageJobExecutor = imageJobExecutor;
+        this.syncWait = syncWait;
     }
 
+    // Kept for existing clients: runs as a job on the same pool and waits for it
     @PostMapping("/generate")
     public ResponseEntity<ImageGenerationResponseDto> generateImage(
             @RequestBody Map<String, String> request,
             Authentication authentication) {
 
-        AppUser user = requireAuthenticatedUser(authentication);
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        ImageJobDto submitted = submitJob(request, principal);
 
-        if (!rateLimitingService.isUserImageAllowed(user)) {
-            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
-                "You have reached the maximum of 5 images. Please upgrade your account to continue.");
+        // Stops watching after syncWait with the last status seen; blockLast(timeout) would throw instead
+        ImageJobDto job = imageJobExecutor.watch(submitted.jobId(), principal.id())
+                .take(syncWait)
+                .blockLast();
+        if (job == null || !job.isFinished()) {
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                "Image is still being generated; poll /api/images/jobs/" + submitted.jobId());
         }
+        if (job.status() == ImageJob.Status.FAILED) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, job.error());
+        }
+
+        ImageGenerationResponseDto response = new ImageGenerationResponseDto(
+            job.imageUrls().get(0),
+            job.prompt(),
+            job.model(),
+            rateLimitingService.getRemainingImages(principal.id()),
+            job.completedAt(),
+            job.conversationId(),
+            job.imageUrls()
+        );
+        return ResponseEntity.ok(response);
+    }
+
+    // Returns as soon as the job is queued; follow it with GET /jobs/{id} or /jobs/{id}/events
+    @PostMapping("/jobs")
+    public ResponseEntity<ImageJobDto> submitImageJob(
+            @RequestBody Map<String, String> request,
+            Authentication authentication) {
+        ImageJobDto job = submitJob(request, requireAuthenticatedUser(authentication));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/images/jobs/" + job.jobId()))
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ImageJobDto> getImageJob(@PathVariable String id, Authentication authentication) {
+        return ResponseEntity.ok(imageJobService.getJob(id, requireAuthenticatedUser(authentication).id()));
+    }
+
+    // One event with the current status, then one when the job finishes (named after its final status)
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ImageJobDto>> watchImageJob(@PathVariable String id, Authentication authentication) {
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        // Unknown or foreign jobs get a 404 before the stream starts
+        imageJobService.getJob(id, principal.id());
+        return imageJobExecutor.watch(id, principal.id())
+                .map(job -> ServerSentEvent.builder(job)
+                        .id(job.jobId())
+                        .event(job.status().name().toLowerCase())
+                        .build());
+    }
+
+    private ImageJobDto submitJob(Map<String, String> request, UserPrincipal principal) {
+        AppUser user = getUserReference(principal);
 
         String prompt = request.get("prompt");
         if (prompt == null || prompt.trim().isEmpty()) {
@@ -69,37 +137,45 @@ public class ImageController extends BaseController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid model specified");
         }
 
+        Long conversationId;
+        int count;
         try {
-            String imageUrl = imageService.generateImage(prompt);
-
-            Long conversationId = (conversationIdStr != null && !conversationIdStr.isEmpty())
+            conversationId = (conversationIdStr != null && !conversationIdStr.isEmpty())
                 ? Long.parseLong(conversationIdStr) : 0L;
-            Conversation conversation = conversationService.getOrCreateConversation(
-                conversationId, user, "Image Generation", model);
-
-            messageService.recordImageGeneration(conversation, user, prompt, imageUrl, model);
-
-            userService.incrementImageCount(user);
-
-            ImageGenerationResponseDto response = new ImageGenerationResponseDto(
-                imageUrl,
-                prompt,
-                model,
-                rateLimitingService.getRemainingImages(user),
-                LocalDateTime.now(),
-                conversation.getId()
-            );
-
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                "Error generating image: " + e.getMessage(), e);
+            count = Integer.parseInt(request.getOrDefault("count", "1"));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid conversationId or count");
+        }
+        if (count < 1 || count > ImageService.MAX_IMAGES_PER_REQUEST) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "count must be between 1 and " + ImageService.MAX_IMAGES_PER_REQUEST);
+        }
+
+        if (!rateLimitingService.tryAcquire(principal.id(), model)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, please slow down.");
+        }
+
+        // Quota for all count images is reserved up front in one statement, so concurrent requests
+        // can't overshoot it; whatever isn't generated is refunded
+        if (!rateLimitingService.tryConsumeImages(principal.id(), count)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, count == 1
+                ? "You have reached the maximum of 5 images. Please upgrade your account to continue."
+                : "Not enough image quota left for " + count + " images. Please upgrade your account to continue.");
+        }
+
+        try {
+            ImageJobDto job = imageJobService.create(user, conversationId, prompt.trim(), model, count);
+            imageJobExecutor.submit(job.jobId());
+            return job;
+        } catch (RuntimeException e) {
+            rateLimitingService.refundImages(principal.id(), count);
+            throw e;
         }
     }
 
     @GetMapping("/my-images")
     public ResponseEntity<List<MessageDto>> getMyImages(Authentication authentication) {
-        AppUser user = requireAuthenticatedUser(authentication);
+        AppUser user = getUserReference(requireAuthenticatedUser(authentication));
         List<Message> images = messageService.getUserImageMessages(user);
         List<MessageDto> response = images.stream()
                 .map(MessageDto::fromEntity)
@@ -1,6 +1,10 @@
 package com.creedpetitt.aiservicesbackend.controllers;
 
+import com.creedpetitt.aiservicesbackend.dto.SignedUploadDto;
+import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import com.creedpetitt.aiservicesbackend.security.UserPrincipal;
 import com.creedpetitt.aiservicesbackend.services.ImageUploadService;
+import com.creedpetitt.aiservicesbackend.services.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -13,11 +17,14 @@ import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
-public class UploadController {
+public class UploadController extends BaseController {
 
     private final ImageUploadService imageUploadService;
 
-    public UploadController(ImageUploadService imageUploadService) {
+    public UploadController(ImageUploadService imageUploadService,
+                            UserService userService,
+                            UserRepository userRepository) {
+        super(userService, userRepository);
         this.imageUploadService = imageUploadService;
     }
 
@@ -26,8 +33,9 @@ public class UploadController {
             @RequestParam("file") MultipartFile file,
             Authentication authentication) {
 
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
         try {
-            String fileUrl = imageUploadService.uploadUserImage(file);
+            String fileUrl = imageUploadService.uploadUserImage(file, principal.id());
 
             Map<String, String> response = new HashMap<>();
             response.put("imageUrl", fileUrl);
@@ -41,4 +49,48 @@ public class UploadController {
                 "Failed to upload image: " + e.getMessage(), e);
         }
     }
+
+    // Direct-to-bucket upload: the browser PUTs the file to the returned URL, then calls finalize
+    @PostMapping("/upload/image/signed-url")
+    public SignedUploadDto createSignedUpload(
+            @RequestBody Map<String, String> request,
+            Authentication authentication) {
+
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        try {
+            return imageUploadService.createSignedUpload(request.get("contentType"), principal.id());
+
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                "Failed to create upload URL: " + e.getMessage(), e);
+        }
+    }
+
+    @PostMapping("/upload/image/finalize")
+    public ResponseEntity<Map<String, String>> finalizeSignedUpload(
+            @RequestBody Map<String, String> request,
+            Authentication authentication) {
+
+        UserPrincipal principal = requireAuthenticatedUser(authentication);
+        try {
+            String fileUrl = imageUploadService.finalizeSignedUpload(request.get("objectKey"), principal.id());
+
+            Map<String, String> response = new HashMap<>();
+            response.put("imageUrl", fileUrl);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+
+        } catch (ResponseStatusException e) {
+            throw e;
+
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                "Failed to finalize upload: " + e.getMessage(), e);
+        }
+    }
 }
@@ -4,5 +4,6 @@ import java.util.List;
 
 public record ConversationDetailDto(
     ConversationDto conversation,
-    List<MessageDto> messages
+    List<MessageDto> messages,
+    boolean hasMore
 ) {}
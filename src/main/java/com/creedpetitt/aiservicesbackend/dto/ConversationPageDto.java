@@ -0,0 +1,8 @@
+package com.creedpetitt.aiservicesbackend.dto;
+
+import java.util.List;
+
+public record ConversationPageDto(
+    List<ConversationSummaryDto> conversations,
+    String nextCursor
+) {}
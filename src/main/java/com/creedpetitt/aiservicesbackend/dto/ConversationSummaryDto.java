@@ -0,0 +1,18 @@
+package com.creedpetitt.aiservicesbackend.dto;
+
+import java.time.LocalDateTime;
+
+// Row of the conversation list; messageCount and lastMessagePreview are null unless requested
+public record ConversationSummaryDto(
+    Long id,
+    String title,
+    String aiModel,
+    LocalDateTime createdAt,
+    LocalDateTime updatedAt,
+    Long messageCount,
+    String lastMessagePreview
+) {
+    public ConversationSummaryDto(Long id, String title, String aiModel, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, title, aiModel, createdAt, updatedAt, null, null);
+    }
+}
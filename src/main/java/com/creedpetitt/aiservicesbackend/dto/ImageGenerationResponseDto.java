@@ -1,6 +1,7 @@
 package com.creedpetitt.aiservicesbackend.dto;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 public record ImageGenerationResponseDto(
     String imageUrl,
@@ -8,6 +9,7 @@ public record ImageGenerationResponseDto(
     String model,
     int remainingImages,
     LocalDateTime generatedAt,
-    Long conversationId
+    Long conversationId,
+    List<String> imageUrls
 ) {
 }
@@ -0,0 +1,39 @@
+package com.creedpetitt.aiservicesbackend.dto;
+
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import com.creedpetitt.aiservicesbackend.models.ImageJob.Status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record ImageJobDto(
+    String jobId,
+    Status status,
+    String prompt,
+    String model,
+    int imageCount,
+    List<String> imageUrls,
+    Long conversationId,
+    String error,
+    LocalDateTime createdAt,
+    LocalDateTime completedAt
+) {
+    public static ImageJobDto fromEntity(ImageJob job) {
+        return new ImageJobDto(
+            job.getId(),
+            job.getStatus(),
+            job.getPrompt(),
+            job.getAiModel(),
+            job.getImageCount(),
+            job.getImageUrls(),
+            job.getConversationId(),
+            job.getError(),
+            job.getCreatedAt(),
+            job.getCompletedAt()
+        );
+    }
+
+    public boolean isFinished() {
+        return status.isFinished();
+    }
+}
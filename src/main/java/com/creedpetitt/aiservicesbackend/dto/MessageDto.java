@@ -1,6 +1,7 @@
 package com.creedpetitt.aiservicesbackend.dto;
 
 import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.models.Message.MessageStatus;
 import com.creedpetitt.aiservicesbackend.models.Message.MessageType;
 
 import java.time.LocalDateTime;
@@ -11,6 +12,7 @@ public record MessageDto(
     MessageType messageType,
     String imageUrl,
     String aiModel,
+    MessageStatus status,
     LocalDateTime createdAt
 ) {
     public static MessageDto fromEntity(Message message) {
@@ -20,6 +22,7 @@ public record MessageDto(
             message.getMessageType(),
             message.getImageUrl(),
             message.getAiModel(),
+            message.getStatus(),
             message.getCreatedAt()
         );
     }
@@ -0,0 +1,13 @@
+package com.creedpetitt.aiservicesbackend.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// The browser PUTs the file to uploadUrl with exactly these headers, then finalizes objectKey
+public record SignedUploadDto(
+    String uploadUrl,
+    String objectKey,
+    Map<String, String> headers,
+    LocalDateTime expiresAt
+) {
+}
@@ -5,7 +5,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+    @Index(name = "idx_conversations_user_updated_id", columnList = "user_id, updated_at DESC, id DESC")
+})
 public class Conversation {
 
     @Id
@@ -31,6 +33,13 @@ public class Conversation {
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Message> messages;
 
+    // Rolling summary of every message up to and including summarizedThroughMessageId
+    @Column(name = "summary", columnDefinition = "TEXT")
+    private String summary;
+
+    @Column(name = "summarized_through_message_id")
+    private Long summarizedThroughMessageId;
+
     @PrePersist
     protected void onCreate() {
         LocalDateTime now = LocalDateTime.now();
@@ -107,4 +116,20 @@ public class Conversation {
         this.messages = messages;
     }
 
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public Long getSummarizedThroughMessageId() {
+        return summarizedThroughMessageId;
+    }
+
+    public void setSummarizedThroughMessageId(Long summarizedThroughMessageId) {
+        this.summarizedThroughMessageId = summarizedThroughMessageId;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.creedpetitt.aiservicesbackend.models;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// An image generation request; the row outlives the node that queued it, so jobs survive restarts
+@Entity
+@Table(name = "image_jobs", indexes = {
+    @Index(name = "idx_image_jobs_status_updated_at", columnList = "status, updated_at")
+})
+public class ImageJob {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // 0 until the job completes when a new conversation was requested
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "prompt", nullable = false, columnDefinition = "TEXT")
+    private String prompt;
+
+    @Column(name = "ai_model", nullable = false, length = 50)
+    private String aiModel;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.QUEUED;
+
+    // Variations requested (and quota reserved); null on rows that predate the column
+    @Column(name = "image_count")
+    private Integer imageCount = 1;
+
+    // Newline-separated; may hold fewer than imageCount if some variations failed
+    @Column(name = "image_urls", columnDefinition = "TEXT")
+    private String imageUrls;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Last status change; how stale QUEUED and RUNNING jobs are found
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        createdAt = now;
+        updatedAt = now;
+    }
+
+    public ImageJob() {}
+
+    public ImageJob(String id, Long userId, Long conversationId, String prompt, String aiModel, int imageCount) {
+        this.id = id;
+        this.userId = userId;
+        this.conversationId = conversationId;
+        this.prompt = prompt;
+        this.aiModel = aiModel;
+        this.imageCount = imageCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    public String getAiModel() {
+        return aiModel;
+    }
+
+    public void setAiModel(String aiModel) {
+        this.aiModel = aiModel;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getImageCount() {
+        return imageCount == null ? 1 : imageCount;
+    }
+
+    public void setImageCount(Integer imageCount) {
+        this.imageCount = imageCount;
+    }
+
+    public List<String> getImageUrls() {
+        return imageUrls == null || imageUrls.isEmpty() ? List.of() : List.of(imageUrls.split("\n"));
+    }
+
+    public void setImageUrls(List<String> imageUrls) {
+        this.imageUrls = imageUrls == null || imageUrls.isEmpty() ? null : String.join("\n", imageUrls);
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+}
@@ -4,7 +4,11 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_conversation_created_id", columnList = "conversation_id, created_at, id"),
+    // Newest completed message of a conversation, to check a cached context is still current
+    @Index(name = "idx_messages_conversation_id", columnList = "conversation_id, id")
+})
 public class Message {
 
     @Id
@@ -32,6 +36,11 @@ public class Message {
     @Column(name = "ai_model", length = 50)
     private String aiModel;
 
+    // STREAMING while an assistant reply is still being written; null on rows that predate the column
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20)
+    private MessageStatus status = MessageStatus.COMPLETE;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -114,6 +123,14 @@ public class Message {
         this.aiModel = aiModel;
     }
 
+    public MessageStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(MessageStatus status) {
+        this.status = status;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -127,4 +144,10 @@ public class Message {
         USER,
         ASSISTANT
     }
+
+    public enum MessageStatus {
+        STREAMING,
+        COMPLETE,
+        INTERRUPTED
+    }
 }
\ No newline at end of file
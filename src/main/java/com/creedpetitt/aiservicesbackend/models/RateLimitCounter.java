@@ -0,0 +1,46 @@
+package com.creedpetitt.aiservicesbackend.models;
+
+import jakarta.persistence.*;
+
+// Row backing JdbcRateLimitStore; mapped so the table is managed with the rest of the schema
+@Entity
+@Table(name = "rate_limit_counters", indexes = {
+    @Index(name = "idx_rate_limit_counters_expires_at", columnList = "expires_at")
+})
+public class RateLimitCounter {
+
+    @Id
+    @Column(name = "counter_key", length = 255)
+    private String key;
+
+    @Column(name = "counter_value", nullable = false)
+    private long value;
+
+    // Epoch millis
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public void setValue(long value) {
+        this.value = value;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,134 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits shared by all replicas through a {@link RateLimitStore}, using fixed one-second and
+ * one-minute windows. To avoid a round-trip per request, each node leases a small batch of
+ * tokens for the current window and hands them out locally until the lease runs dry.
+ * A lease is a tenth of the window's limit (capped at {@code maxLeaseSize}), so one node can't
+ * starve the others. Below 20 per window that is a single token: a larger lease would let
+ * one node hold tokens another node then has to refuse, rejecting a client that is within its
+ * limit, so small limits such as the per-user ones pay a store round trip per request to stay
+ * exact. If the store is unreachable the node falls back to its local limiter for the whole
+ * request instead of failing it.
+ */
+public class DistributedRateLimiter implements RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimiter.class);
+
+    private static final Duration SECOND = Duration.ofSeconds(1);
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+
+    private final RateLimitStore store;
+    private final RateLimiter fallback;
+    private final Clock clock;
+    private final long maxLeaseSize;
+    private final Cache<String, Lease> leases;
+
+    public DistributedRateLimiter(RateLimitStore store, RateLimiter fallback, Clock clock,
+                                  long maxLeaseSize, long maxKeys) {
+        this.store = store;
+        this.fallback = fallback;
+        this.clock = clock;
+        this.maxLeaseSize = maxLeaseSize;
+        this.leases = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(MINUTE.multipliedBy(2))
+                .build();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimit limit) {
+        boolean secondAcquired = false;
+        try {
+            if (!acquire(key, "s", SECOND, limit.perSecond())) {
+                return false;
+            }
+            secondAcquired = true;
+            if (!acquire(key, "m", MINUTE, limit.perMinute())) {
+                giveBack(key, "s", SECOND);
+                return false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // The local limiter decides the whole request, so a token already taken from the store is returned
+            if (secondAcquired) {
+                giveBack(key, "s", SECOND);
+            }
+            logger.warn("Rate limit store unavailable, using local limits: {}", e.getMessage());
+            return fallback.tryAcquire(key, limit);
+        }
+    }
+
+    @Override
+    public void release(String key) {
+        giveBack(key, "s", SECOND);
+        giveBack(key, "m", MINUTE);
+    }
+
+    private boolean acquire(String key, String unit, Duration window, long limit) {
+        long windowIndex = clock.millis() / window.toMillis();
+        Lease lease = leases.get(key + "|" + unit, k -> new Lease());
+        // Per-key lock: at most one refill per key is in flight from this node. A ReentrantLock
+        // rather than synchronized, so a virtual thread waiting on the store doesn't pin its carrier
+        lease.lock.lock();
+        try {
+            if (lease.window != windowIndex) {
+                lease.window = windowIndex;
+                lease.remaining = 0;
+                lease.exhausted = false;
+            }
+            if (lease.remaining == 0) {
+                if (lease.exhausted) {
+                    return false;
+                }
+                // A tenth of the limit, rounded down: single tokens below 20 per window
+                long batch = Math.max(1, Math.min(maxLeaseSize, limit / 10));
+                // Counter outlives its window a little so late writers don't resurrect it
+                long total = store.addAndGet(key + ":" + unit + ":" + windowIndex, batch, window.multipliedBy(2));
+                long granted = Math.max(0, Math.min(batch, limit - (total - batch)));
+                if (granted < batch) {
+                    lease.exhausted = true;
+                }
+                if (granted == 0) {
+                    return false;
+                }
+                lease.remaining = granted;
+            }
+            lease.remaining--;
+            return true;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    private void giveBack(String key, String unit, Duration window) {
+        Lease lease = leases.getIfPresent(key + "|" + unit);
+        if (lease == null) {
+            return;
+        }
+        lease.lock.lock();
+        try {
+            if (lease.window == clock.millis() / window.toMillis()) {
+                lease.remaining++;
+            }
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    private static final class Lease {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long window = -1;
+        private long remaining;
+        private boolean exhausted;
+    }
+}
@@ -0,0 +1,43 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the shared store. Behaves like the database store for a single
+ * JVM, which makes it useful for tests and for running the distributed limiter locally.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private static final int PURGE_EVERY = 1024;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicLong operations = new AtomicLong();
+    private final Clock clock;
+
+    public InMemoryRateLimitStore(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public long addAndGet(String key, long delta, Duration ttl) {
+        long now = clock.millis();
+        if (operations.incrementAndGet() % PURGE_EVERY == 0) {
+            counters.values().removeIf(counter -> counter.expiresAt() <= now);
+        }
+        Counter updated = counters.compute(key, (k, current) ->
+                current == null || current.expiresAt() <= now
+                        ? new Counter(delta, now + ttl.toMillis())
+                        : new Counter(current.value() + delta, current.expiresAt()));
+        return updated.value();
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private record Counter(long value, long expiresAt) {}
+}
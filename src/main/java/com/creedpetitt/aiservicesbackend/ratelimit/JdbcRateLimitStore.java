@@ -0,0 +1,44 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Shared counters in the application's PostgreSQL database (table rate_limit_counters),
+ * so every replica sees the same windows. Each call is one upsert round-trip.
+ */
+public class JdbcRateLimitStore implements RateLimitStore {
+
+    private static final String ADD_AND_GET = """
+            INSERT INTO rate_limit_counters (counter_key, counter_value, expires_at) VALUES (?, ?, ?)
+            ON CONFLICT (counter_key) DO UPDATE SET
+                counter_value = CASE WHEN rate_limit_counters.expires_at <= ? THEN EXCLUDED.counter_value
+                                     ELSE rate_limit_counters.counter_value + EXCLUDED.counter_value END,
+                expires_at = CASE WHEN rate_limit_counters.expires_at <= ? THEN EXCLUDED.expires_at
+                                  ELSE rate_limit_counters.expires_at END
+            RETURNING counter_value
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+
+    public JdbcRateLimitStore(JdbcTemplate jdbcTemplate, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+    }
+
+    @Override
+    public long addAndGet(String key, long delta, Duration ttl) {
+        long now = clock.millis();
+        Long value = jdbcTemplate.queryForObject(ADD_AND_GET, Long.class, key, delta, now + ttl.toMillis(), now, now);
+        return value == null ? 0 : value;
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.cleanup-interval:PT1M}")
+    public void deleteExpired() {
+        jdbcTemplate.update("DELETE FROM rate_limit_counters WHERE expires_at <= ?", clock.millis());
+    }
+}
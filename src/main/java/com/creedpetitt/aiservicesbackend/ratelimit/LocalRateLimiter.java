@@ -0,0 +1,66 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+
+/**
+ * In-memory per-key limiter. Every key gets a per-second and a per-minute bucket; a request
+ * must fit in both. Keys idle longer than the idle timeout are dropped - by then their
+ * buckets would have refilled completely, so eviction never changes a decision.
+ */
+public class LocalRateLimiter implements RateLimiter {
+
+    private final Cache<String, KeyBuckets> buckets;
+
+    public LocalRateLimiter(long maxKeys, Duration idleTimeout) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimit limit) {
+        return buckets.get(key, k -> new KeyBuckets(limit)).tryAcquire();
+    }
+
+    @Override
+    public void release(String key) {
+        KeyBuckets keyBuckets = buckets.getIfPresent(key);
+        if (keyBuckets != null) {
+            keyBuckets.release();
+        }
+    }
+
+    public long trackedKeys() {
+        return buckets.estimatedSize();
+    }
+
+    private static final class KeyBuckets {
+        private final TokenBucket perSecond;
+        private final TokenBucket perMinute;
+
+        KeyBuckets(RateLimit limit) {
+            this.perSecond = new TokenBucket(limit.perSecond(), limit.perSecond());
+            this.perMinute = new TokenBucket(limit.perMinute(), limit.perMinute() / 60d);
+        }
+
+        boolean tryAcquire() {
+            if (!perSecond.tryConsume(1)) {
+                return false;
+            }
+            if (!perMinute.tryConsume(1)) {
+                perSecond.release(1);
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            perSecond.release(1);
+            perMinute.release(1);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+// Requests allowed per second (burst) and per minute (sustained) for one key
+public record RateLimit(long perSecond, long perMinute) {
+
+    public RateLimit {
+        if (perSecond <= 0 || perMinute <= 0) {
+            throw new IllegalArgumentException("Rate limits must be positive");
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import java.time.Duration;
+
+// Shared counter store used by DistributedRateLimiter
+public interface RateLimitStore {
+
+    /**
+     * Atomically adds {@code delta} to the counter and returns the new value.
+     * A missing or expired counter starts again from zero and lives for {@code ttl}.
+     */
+    long addAndGet(String key, long delta, Duration ttl);
+}
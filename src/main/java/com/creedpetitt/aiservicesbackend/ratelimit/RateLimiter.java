@@ -0,0 +1,9 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+public interface RateLimiter {
+
+    boolean tryAcquire(String key, RateLimit limit);
+
+    // Undo a successful tryAcquire when a later check in the same request fails
+    void release(String key);
+}
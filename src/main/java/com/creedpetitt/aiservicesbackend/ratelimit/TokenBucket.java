@@ -0,0 +1,60 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free token bucket. State is swapped atomically with CAS, so concurrent callers
+ * never block each other; refill is computed lazily from elapsed time on each attempt.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final AtomicReference<State> state;
+
+    public TokenBucket(long capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+    }
+
+    public boolean tryConsume(long tokens) {
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = refill(current, now);
+            if (available < tokens) {
+                return false;
+            }
+            if (state.compareAndSet(current, new State(available - tokens, now))) {
+                return true;
+            }
+        }
+    }
+
+    // Returns tokens taken by an acquisition that was rolled back
+    public void release(long tokens) {
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = Math.min(capacity, refill(current, now) + tokens);
+            if (state.compareAndSet(current, new State(available, now))) {
+                return;
+            }
+        }
+    }
+
+    public double availableTokens() {
+        return refill(state.get(), System.nanoTime());
+    }
+
+    private double refill(State current, long now) {
+        long elapsed = Math.max(0, now - current.updatedAt());
+        return Math.min(capacity, current.tokens() + elapsed * refillPerNano);
+    }
+
+    private record State(double tokens, long updatedAt) {}
+}
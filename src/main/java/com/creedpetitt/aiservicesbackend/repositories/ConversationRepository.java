@@ -1,10 +1,16 @@
 package com.creedpetitt.aiservicesbackend.repositories;
 
+import com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.models.Conversation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,8 +21,44 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
 
     Optional<Conversation> findByIdAndUser(Long id, AppUser user);
 
-    // ID-based methods (preferred - avoids entity detachment issues)
-    List<Conversation> findByUserIdOrderByUpdatedAtDesc(Long userId);
+    // Conversation list pages, keyset-paged on (updatedAt, id) newest first
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto(c.id, c.title, c.aiModel, c.createdAt, c.updatedAt) " +
+           "FROM Conversation c WHERE c.user.id = :userId ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ConversationSummaryDto> findSummaries(@Param("userId") Long userId, Pageable pageable);
+
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto(c.id, c.title, c.aiModel, c.createdAt, c.updatedAt) " +
+           "FROM Conversation c WHERE c.user.id = :userId " +
+           "AND (c.updatedAt < :updatedAt OR (c.updatedAt = :updatedAt AND c.id < :id)) " +
+           "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ConversationSummaryDto> findSummariesBefore(@Param("userId") Long userId,
+                                                     @Param("updatedAt") LocalDateTime updatedAt,
+                                                     @Param("id") Long id,
+                                                     Pageable pageable);
+
+    // Same pages plus message count and a preview of the newest message, via correlated subqueries per row
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto(c.id, c.title, c.aiModel, c.createdAt, c.updatedAt, " +
+           "(SELECT COUNT(m) FROM Message m WHERE m.conversation = c), " +
+           "(SELECT SUBSTRING(lm.content, 1, 100) FROM Message lm WHERE lm.conversation = c ORDER BY lm.createdAt DESC, lm.id DESC LIMIT 1)) " +
+           "FROM Conversation c WHERE c.user.id = :userId ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ConversationSummaryDto> findSummariesWithPreview(@Param("userId") Long userId, Pageable pageable);
 
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto(c.id, c.title, c.aiModel, c.createdAt, c.updatedAt, " +
+           "(SELECT COUNT(m) FROM Message m WHERE m.conversation = c), " +
+           "(SELECT SUBSTRING(lm.content, 1, 100) FROM Message lm WHERE lm.conversation = c ORDER BY lm.createdAt DESC, lm.id DESC LIMIT 1)) " +
+           "FROM Conversation c WHERE c.user.id = :userId " +
+           "AND (c.updatedAt < :updatedAt OR (c.updatedAt = :updatedAt AND c.id < :id)) " +
+           "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ConversationSummaryDto> findSummariesWithPreviewBefore(@Param("userId") Long userId,
+                                                                @Param("updatedAt") LocalDateTime updatedAt,
+                                                                @Param("id") Long id,
+                                                                Pageable pageable);
+
+    // ID-based methods (preferred - avoids entity detachment issues)
     Optional<Conversation> findByIdAndUserId(Long id, Long userId);
+
+    // Bulk update so storing a summary doesn't bump updatedAt; never moves the summary backwards
+    @Modifying
+    @Query("UPDATE Conversation c SET c.summary = :summary, c.summarizedThroughMessageId = :throughId " +
+           "WHERE c.id = :id AND (c.summarizedThroughMessageId IS NULL OR c.summarizedThroughMessageId < :throughId)")
+    int updateSummary(@Param("id") Long id, @Param("summary") String summary, @Param("throughId") Long throughId);
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.creedpetitt.aiservicesbackend.repositories;
+
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ImageJobRepository extends JpaRepository<ImageJob, String> {
+
+    Optional<ImageJob> findByIdAndUserId(String id, Long userId);
+
+    // QUEUED -> RUNNING in one statement: returns 1 for exactly one worker, even across nodes
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE ImageJob j SET j.status = com.creedpetitt.aiservicesbackend.models.ImageJob.Status.RUNNING, j.updatedAt = :now " +
+           "WHERE j.id = :id AND j.status = com.creedpetitt.aiservicesbackend.models.ImageJob.Status.QUEUED")
+    int claim(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    // RUNNING jobs whose worker died with its node; updatedAt is kept, so they are picked up as stale QUEUED jobs
+    @Modifying
+    @Query("UPDATE ImageJob j SET j.status = com.creedpetitt.aiservicesbackend.models.ImageJob.Status.QUEUED " +
+           "WHERE j.status = com.creedpetitt.aiservicesbackend.models.ImageJob.Status.RUNNING AND j.updatedAt < :cutoff")
+    int requeueStaleRunning(@Param("cutoff") LocalDateTime cutoff);
+
+    @Query("SELECT j.id FROM ImageJob j WHERE j.status = com.creedpetitt.aiservicesbackend.models.ImageJob.Status.QUEUED " +
+           "AND j.updatedAt < :cutoff ORDER BY j.updatedAt ASC")
+    List<String> findQueuedIdsBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,19 +1,76 @@
 package com.creedpetitt.aiservicesbackend.repositories;
 
+import com.creedpetitt.aiservicesbackend.dto.MessageDto;
 import com.creedpetitt.aiservicesbackend.models.Conversation;
 import com.creedpetitt.aiservicesbackend.models.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    List<Message> findByConversationOrderByCreatedAtAsc(Conversation conversation);
+    // Newest-first tail of a conversation, paged by (createdAt, id) keyset
+    List<Message> findByConversationIdOrderByCreatedAtDescIdDesc(Long conversationId, Pageable pageable);
+
+    List<Message> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long id, Pageable pageable);
+
+    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findPageBefore(@Param("conversationId") Long conversationId,
+                                 @Param("createdAt") LocalDateTime createdAt,
+                                 @Param("id") Long id,
+                                 Pageable pageable);
+
+    // DTO pages for the API, keyset-paged on (createdAt, id) so every page is an index range scan
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.MessageDto(m.id, m.content, m.messageType, m.imageUrl, m.aiModel, m.status, m.createdAt) " +
+           "FROM Message m WHERE m.conversation.id = :conversationId ORDER BY m.createdAt DESC, m.id DESC")
+    List<MessageDto> findLatestDtos(@Param("conversationId") Long conversationId, Pageable pageable);
+
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.MessageDto(m.id, m.content, m.messageType, m.imageUrl, m.aiModel, m.status, m.createdAt) " +
+           "FROM Message m WHERE m.conversation.id = :conversationId ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageDto> findOldestDtos(@Param("conversationId") Long conversationId, Pageable pageable);
+
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.MessageDto(m.id, m.content, m.messageType, m.imageUrl, m.aiModel, m.status, m.createdAt) " +
+           "FROM Message m WHERE m.conversation.id = :conversationId AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MessageDto> findDtosBefore(@Param("conversationId") Long conversationId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    Pageable pageable);
+
+    @Query("SELECT new com.creedpetitt.aiservicesbackend.dto.MessageDto(m.id, m.content, m.messageType, m.imageUrl, m.aiModel, m.status, m.createdAt) " +
+           "FROM Message m WHERE m.conversation.id = :conversationId AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id)) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageDto> findDtosAfter(@Param("conversationId") Long conversationId,
+                                   @Param("createdAt") LocalDateTime createdAt,
+                                   @Param("id") Long id,
+                                   Pageable pageable);
+
+    @Query("SELECT m.createdAt FROM Message m WHERE m.id = :id AND m.conversation.id = :conversationId")
+    Optional<LocalDateTime> findCreatedAtByIdAndConversationId(@Param("id") Long id, @Param("conversationId") Long conversationId);
+
+    // Backward scan of (conversation_id, id) that stops at the first completed row
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.conversation.id = :conversationId " +
+           "AND (m.status IS NULL OR m.status = com.creedpetitt.aiservicesbackend.models.Message.MessageStatus.COMPLETE)")
+    Optional<Long> findLatestCompleteMessageId(@Param("conversationId") Long conversationId);
+
+    // Checkpoint of a streaming reply: appends only the new text instead of rewriting the row
+    @Modifying
+    @Query("UPDATE Message m SET m.content = CONCAT(m.content, :delta) WHERE m.id = :id")
+    int appendContent(@Param("id") Long id, @Param("delta") String delta);
+
+    @Modifying
+    @Query("UPDATE Message m SET m.status = com.creedpetitt.aiservicesbackend.models.Message.MessageStatus.INTERRUPTED " +
+           "WHERE m.status = com.creedpetitt.aiservicesbackend.models.Message.MessageStatus.STREAMING AND m.createdAt < :cutoff")
+    int markStaleStreaming(@Param("cutoff") LocalDateTime cutoff);
 
     @Query("SELECT m FROM Message m WHERE m.user = :user AND m.messageType = com.creedpetitt.aiservicesbackend.models.Message.MessageType.ASSISTANT AND m.imageUrl IS NOT NULL ORDER BY m.createdAt DESC")
     List<Message> findAllImageMessagesByUser(@Param("user") com.creedpetitt.aiservicesbackend.models.AppUser user);
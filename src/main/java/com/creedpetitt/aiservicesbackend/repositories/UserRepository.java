@@ -2,6 +2,9 @@ package com.creedpetitt.aiservicesbackend.repositories;
 
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,4 +12,24 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<AppUser, Long> {
     Optional<AppUser> findByFirebaseUid(String firebaseUid);
+
+    // Check-and-consume in one statement: returns 1 if the quota had room, 0 otherwise
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE AppUser u SET u.messageCount = COALESCE(u.messageCount, 0) + 1 WHERE u.id = :id AND COALESCE(u.messageCount, 0) < :limit")
+    int incrementMessageCountIfBelow(@Param("id") Long id, @Param("limit") int limit);
+
+    // All of count or none: returns 1 only if every image fits under the limit
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE AppUser u SET u.imageCount = COALESCE(u.imageCount, 0) + :count WHERE u.id = :id AND COALESCE(u.imageCount, 0) + :count <= :limit")
+    int incrementImageCountIfRoom(@Param("id") Long id, @Param("count") int count, @Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE AppUser u SET u.imageCount = CASE WHEN u.imageCount > :count THEN u.imageCount - :count ELSE 0 END WHERE u.id = :id AND u.imageCount > 0")
+    int decrementImageCount(@Param("id") Long id, @Param("count") int count);
+
+    @Query("SELECT COALESCE(u.messageCount, 0) FROM AppUser u WHERE u.id = :id")
+    Optional<Integer> findMessageCountById(@Param("id") Long id);
+
+    @Query("SELECT COALESCE(u.imageCount, 0) FROM AppUser u WHERE u.id = :id")
+    Optional<Integer> findImageCountById(@Param("id") Long id);
 }
@@ -15,16 +15,21 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
 
 @Component
 public class FirebaseFilter extends OncePerRequestFilter {
 
     private final FirebaseAuth firebaseAuth;
     private final UserService userService;
+    private final FirebaseTokenCache tokenCache;
 
-    public FirebaseFilter(FirebaseAuth firebaseAuth, UserService userService) {
+    public FirebaseFilter(FirebaseAuth firebaseAuth, UserService userService, FirebaseTokenCache tokenCache) {
         this.firebaseAuth = firebaseAuth;
         this.userService = userService;
+        this.tokenCache = tokenCache;
     }
 
     @Override
@@ -44,15 +49,26 @@ public class FirebaseFilter extends OncePerRequestFilter {
         }
         
         try {
-            FirebaseToken decodedToken = firebaseAuth.verifyIdToken(token);
+            UserPrincipal principal;
+            Optional<FirebaseTokenCache.CachedToken> cached = tokenCache.get(token);
+            if (cached.isPresent()) {
+                principal = cached.get().principal();
+            } else {
+                FirebaseToken decodedToken = firebaseAuth.verifyIdToken(token);
 
-            String provider = decodedToken.getClaims().containsKey("sign_in_provider")
-                ? (String) decodedToken.getClaims().get("sign_in_provider")
-                : "unknown";
+                String provider = decodedToken.getClaims().containsKey("sign_in_provider")
+                    ? (String) decodedToken.getClaims().get("sign_in_provider")
+                    : "unknown";
 
-            AppUser appUser = userService.getOrCreateUser(decodedToken.getUid(), decodedToken.getEmail(), provider);
+                AppUser appUser = userService.getOrCreateUser(decodedToken.getUid(), decodedToken.getEmail(), provider);
+                principal = UserPrincipal.fromEntity(appUser);
 
-            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(appUser, null, appUser.getAuthorities());
+                if (decodedToken.getClaims().get("exp") instanceof Number exp) {
+                    tokenCache.put(token, principal, Instant.ofEpochSecond(exp.longValue()));
+                }
+            }
+
+            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(principal, null, Collections.emptyList());
             SecurityContextHolder.getContext().setAuthentication(authentication);
 
         } catch (Exception e) {
@@ -0,0 +1,79 @@
+package com.creedpetitt.aiservicesbackend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Remembers which user an already-verified Firebase ID token belongs to, so repeat
+ * requests skip signature verification and the user lookup. Entries are keyed by a
+ * SHA-256 of the token (the raw token is never held) and expire at the token's exp claim.
+ */
+@Component
+public class FirebaseTokenCache {
+
+    private final Cache<String, CachedToken> cache;
+
+    public FirebaseTokenCache(MeterRegistry meterRegistry,
+                              @Value("${app.auth.token-cache.max-size:10000}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "firebase.tokens");
+    }
+
+    public Optional<CachedToken> get(String token) {
+        return Optional.ofNullable(cache.getIfPresent(hash(token)));
+    }
+
+    public void put(String token, UserPrincipal principal, Instant expiresAt) {
+        if (principal.id() == null || expiresAt == null || !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        cache.put(hash(token), new CachedToken(principal, expiresAt));
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record CachedToken(UserPrincipal principal, Instant expiresAt) {}
+
+    // Each entry lives exactly until its token's exp claim; reads do not extend it
+    private static final class TokenExpiry implements Expiry<String, CachedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedToken value, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), value.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.creedpetitt.aiservicesbackend.security;
+
+import com.creedpetitt.aiservicesbackend.models.AppUser;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+/**
+ * Request-scoped view of the signed-in user, built once by {@link FirebaseFilter}.
+ * Only identity is carried; quota and profile state are read from the users row when needed.
+ */
+public record UserPrincipal(
+    Long id,
+    String firebaseUid
+) implements AuthenticatedPrincipal {
+
+    public static UserPrincipal fromEntity(AppUser user) {
+        return new UserPrincipal(user.getId(), user.getFirebaseUid());
+    }
+
+    @Override
+    public String getName() {
+        return firebaseUid;
+    }
+}
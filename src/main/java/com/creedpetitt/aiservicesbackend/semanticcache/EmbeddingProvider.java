@@ -0,0 +1,9 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+// Turns text into an L2-normalized vector; implementations must always return dimensions() values
+public interface EmbeddingProvider {
+
+    int dimensions();
+
+    float[] embed(String text);
+}
@@ -0,0 +1,432 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over unit vectors, ranked by
+ * cosine similarity. Capacity is fixed up front and ids are slots in insertion order. Removing
+ * only marks a slot deleted: it still routes searches but is never returned, so owners rebuild
+ * once too many slots are dead. Not thread-safe; callers serialize writes against searches.
+ */
+public class HnswIndex {
+
+    public record Match(int id, float similarity) {}
+
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimensions;
+    private final int capacity;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private final float[] vectors;
+    // Per slot: neighbour count, then up to maxM0 ids
+    private final int[] links0;
+    // Per slot, for levels 1..level: neighbour count, then up to m ids
+    private final int[][] upperLinks;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimensions, int capacity, int m, int efConstruction, long seed) {
+        if (dimensions <= 0 || capacity <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters");
+        }
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+        this.vectors = new float[Math.multiplyExact(capacity, dimensions)];
+        this.links0 = new int[Math.multiplyExact(capacity, maxM0 + 1)];
+        this.upperLinks = new int[capacity][];
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return size - deletedCount;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public boolean isDeleted(int id) {
+        return deleted.get(id);
+    }
+
+    // The vector must be L2-normalized; returns its id
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        if (isFull()) {
+            throw new IllegalStateException("Index is full");
+        }
+        int id = size++;
+        System.arraycopy(vector, 0, vectors, id * dimensions, dimensions);
+        int level = randomLevel();
+        if (level > 0) {
+            upperLinks[id] = new int[level * (m + 1)];
+        }
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+
+        int current = entryPoint;
+        float currentDistance = distance(vector, current);
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, currentDistance, l);
+            currentDistance = distance(vector, current);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(vector, current, currentDistance, efConstruction, l, false);
+            int[] neighbours = selectNeighbours(candidates, m);
+            setLinks(id, l, neighbours, neighbours.length);
+            for (int neighbour : neighbours) {
+                connect(neighbour, id, l);
+            }
+            current = idOf(candidates[0]);
+            currentDistance = distanceOf(candidates[0]);
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        return id;
+    }
+
+    public void markDeleted(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown id " + id);
+        }
+        if (!deleted.get(id)) {
+            deleted.set(id);
+            deletedCount++;
+        }
+    }
+
+    // Up to k live matches, most similar first; ef trades recall for latency
+    public List<Match> search(float[] query, int k, int ef) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        if (entryPoint < 0 || liveCount() == 0 || k <= 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        float currentDistance = distance(query, current);
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, currentDistance, l);
+            currentDistance = distance(query, current);
+        }
+        long[] found = searchLayer(query, current, currentDistance, Math.max(ef, k), 0, true);
+        List<Match> matches = new ArrayList<>(Math.min(k, found.length));
+        for (int i = 0; i < found.length && matches.size() < k; i++) {
+            matches.add(new Match(idOf(found[i]), 1 - distanceOf(found[i])));
+        }
+        return matches;
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * levelMultiplier));
+    }
+
+    private int greedyClosest(float[] query, int start, float startDistance, int level) {
+        int current = start;
+        float currentDistance = startDistance;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] links = linkArray(current, level);
+            int offset = linkOffset(current, level);
+            int count = links[offset];
+            for (int i = 1; i <= count; i++) {
+                int neighbour = links[offset + i];
+                float d = distance(query, neighbour);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best ef nodes reachable on one level, as packed (distance, id) sorted nearest first
+    private long[] searchLayer(float[] query, int entry, float entryDistance, int ef, int level, boolean liveOnly) {
+        IntSet visited = new IntSet(ef * 4);
+        LongHeap candidates = new LongHeap(ef * 2);
+        // Max-heap by distance, stored negated in a min-heap
+        LongHeap results = new LongHeap(ef + 1);
+
+        visited.add(entry);
+        long entryKey = pack(entryDistance, entry);
+        candidates.push(entryKey);
+        if (!liveOnly || !deleted.get(entry)) {
+            results.push(-entryKey);
+        }
+        while (!candidates.isEmpty()) {
+            long closest = candidates.pop();
+            if (results.size() >= ef && distanceOf(closest) > distanceOf(-results.peek())) {
+                break;
+            }
+            int node = idOf(closest);
+            int[] links = linkArray(node, level);
+            int offset = linkOffset(node, level);
+            int count = links[offset];
+            for (int i = 1; i <= count; i++) {
+                int neighbour = links[offset + i];
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float d = distance(query, neighbour);
+                if (results.size() < ef || d < distanceOf(-results.peek())) {
+                    long key = pack(d, neighbour);
+                    candidates.push(key);
+                    if (!liveOnly || !deleted.get(neighbour)) {
+                        results.push(-key);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        long[] sorted = new long[results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = -results.pop();
+        }
+        return sorted;
+    }
+
+    // Diversity heuristic: skip a candidate that is closer to an already chosen neighbour than to the target
+    private int[] selectNeighbours(long[] sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.length)];
+        int count = 0;
+        for (long candidate : sortedCandidates) {
+            if (count == selected.length) {
+                break;
+            }
+            int id = idOf(candidate);
+            float toTarget = distanceOf(candidate);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(id, selected[i]) < toTarget) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = id;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int newNeighbour, int level) {
+        int[] links = linkArray(node, level);
+        int offset = linkOffset(node, level);
+        int count = links[offset];
+        int max = level == 0 ? maxM0 : m;
+        if (count < max) {
+            links[offset + 1 + count] = newNeighbour;
+            links[offset] = count + 1;
+            return;
+        }
+        long[] candidates = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            int existing = links[offset + 1 + i];
+            candidates[i] = pack(distance(node, existing), existing);
+        }
+        candidates[count] = pack(distance(node, newNeighbour), newNeighbour);
+        Arrays.sort(candidates);
+        int[] kept = selectNeighbours(candidates, max);
+        setLinks(node, level, kept, kept.length);
+    }
+
+    private void setLinks(int node, int level, int[] neighbours, int count) {
+        int[] links = linkArray(node, level);
+        int offset = linkOffset(node, level);
+        links[offset] = count;
+        System.arraycopy(neighbours, 0, links, offset + 1, count);
+    }
+
+    private int[] linkArray(int node, int level) {
+        return level == 0 ? links0 : upperLinks[node];
+    }
+
+    private int linkOffset(int node, int level) {
+        return level == 0 ? node * (maxM0 + 1) : (level - 1) * (m + 1);
+    }
+
+    private float distance(float[] query, int id) {
+        return Math.max(0f, 1 - dot(query, 0, vectors, id * dimensions));
+    }
+
+    private float distance(int a, int b) {
+        return Math.max(0f, 1 - dot(vectors, a * dimensions, vectors, b * dimensions));
+    }
+
+    // Four independent sums so the JIT can keep several multiply-adds in flight
+    private float dot(float[] x, int xOffset, float[] y, int yOffset) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+            s1 += x[xOffset + i + 1] * y[yOffset + i + 1];
+            s2 += x[xOffset + i + 2] * y[yOffset + i + 2];
+            s3 += x[xOffset + i + 3] * y[yOffset + i + 3];
+        }
+        for (; i < dimensions; i++) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // Non-negative floats order like their bit patterns, so (distance, id) packs into a sortable long
+    private static long pack(float distance, int id) {
+        return ((long) Float.floatToRawIntBits(distance) << 32) | id;
+    }
+
+    private static float distanceOf(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static int idOf(long packed) {
+        return (int) packed;
+    }
+
+    private static final class LongHeap {
+
+        private long[] heap;
+        private int size;
+
+        LongHeap(int initialCapacity) {
+            heap = new long[Math.max(4, initialCapacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+
+    // Open-addressing set of non-negative ints, sized for one search
+    private static final class IntSet {
+
+        private int[] table;
+        private int size;
+
+        IntSet(int expected) {
+            table = new int[Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1];
+            Arrays.fill(table, -1);
+        }
+
+        boolean add(int value) {
+            if (size * 2 >= table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != -1) {
+                if (table[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, -1);
+            size = 0;
+            for (int value : old) {
+                if (value != -1) {
+                    add(value);
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
+/**
+ * Embeddings from a Spring AI {@link EmbeddingModel}, so similar prompts are matched by meaning.
+ * The model must be configured to return {@code dimensions} values (for OpenAI,
+ * {@code spring.ai.openai.embedding.options.dimensions}); vectors are re-normalized since not
+ * every model returns unit length.
+ */
+public class ModelEmbeddingProvider implements EmbeddingProvider {
+
+    private final EmbeddingModel embeddingModel;
+    private final int dimensions;
+
+    public ModelEmbeddingProvider(EmbeddingModel embeddingModel, int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.embeddingModel = embeddingModel;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = embeddingModel.embed(text);
+        if (vector.length != dimensions) {
+            throw new IllegalStateException("Embedding model returned " + vector.length
+                    + " dimensions, expected " + dimensions);
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,268 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Replies looked up by prompt similarity. Each partition (a model and system prompt) has its
+ * own {@link HnswIndex} holding at most {@code maxEntries} live entries; the oldest are evicted
+ * first, and entries older than the TTL are never returned. Evicted slots stay in the graph as
+ * tombstones until the index fills up, then the partition is rebuilt from its live entries.
+ * Searches share a read lock per partition, inserts and rebuilds take the write lock.
+ */
+public class SemanticCache {
+
+    private static final int SNAPSHOT_MAGIC = 0x53454d43;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    public record Settings(int maxEntries, Duration ttl, float similarityThreshold, int m, int efConstruction, int efSearch) {}
+
+    private record Entry(String prompt, String reply, float[] vector, long createdAtMillis) {}
+
+    private final EmbeddingProvider embeddingProvider;
+    private final Settings settings;
+    private final Clock clock;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    public SemanticCache(EmbeddingProvider embeddingProvider, Settings settings, Clock clock) {
+        this.embeddingProvider = embeddingProvider;
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    public Optional<String> get(String partition, String prompt) {
+        Partition entries = partitions.get(partition);
+        if (entries == null) {
+            return Optional.empty();
+        }
+        return entries.find(embeddingProvider.embed(prompt), clock.millis() - settings.ttl().toMillis());
+    }
+
+    public void put(String partition, String prompt, String reply) {
+        float[] vector = embeddingProvider.embed(prompt);
+        if (isZero(vector)) {
+            return;
+        }
+        partitions.computeIfAbsent(partition, key -> new Partition())
+                .add(new Entry(prompt, reply, vector, clock.millis()));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Partition partition : partitions.values()) {
+            size += partition.liveCount();
+        }
+        return size;
+    }
+
+    public void evictExpired() {
+        long cutoff = clock.millis() - settings.ttl().toMillis();
+        for (Partition partition : partitions.values()) {
+            partition.evictOlderThan(cutoff);
+        }
+    }
+
+    // Entries are written with their vectors, so loading doesn't embed anything again
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(embeddingProvider.dimensions());
+            out.writeInt(partitions.size());
+            for (Map.Entry<String, Partition> partition : partitions.entrySet()) {
+                List<Entry> entries = partition.getValue().liveEntries();
+                writeString(out, partition.getKey());
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeLong(entry.createdAtMillis());
+                    writeString(out, entry.prompt());
+                    writeString(out, entry.reply());
+                    for (float value : entry.vector()) {
+                        out.writeFloat(value);
+                    }
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns the number of entries restored; a snapshot from another embedding size is ignored
+    public int load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        long cutoff = clock.millis() - settings.ttl().toMillis();
+        int restored = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a semantic cache snapshot: " + file);
+            }
+            int dimensions = in.readInt();
+            if (dimensions != embeddingProvider.dimensions()) {
+                return 0;
+            }
+            int partitionCount = in.readInt();
+            for (int p = 0; p < partitionCount; p++) {
+                String key = readString(in);
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long createdAt = in.readLong();
+                    String prompt = readString(in);
+                    String reply = readString(in);
+                    float[] vector = new float[dimensions];
+                    for (int d = 0; d < dimensions; d++) {
+                        vector[d] = in.readFloat();
+                    }
+                    if (createdAt >= cutoff) {
+                        partitions.computeIfAbsent(key, k -> new Partition()).add(new Entry(prompt, reply, vector, createdAt));
+                        restored++;
+                    }
+                }
+            }
+        }
+        return restored;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZero(float[] vector) {
+        for (float value : vector) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class Partition {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Room for tombstones, so a full partition is rebuilt only every maxEntries / 4 inserts
+        private final int capacity = settings.maxEntries() + Math.max(16, settings.maxEntries() / 4);
+        private HnswIndex index;
+        private Entry[] entries;
+        // Live ids, oldest first
+        private ArrayDeque<Integer> order;
+
+        Partition() {
+            reset();
+        }
+
+        Optional<String> find(float[] vector, long notBeforeMillis) {
+            lock.readLock().lock();
+            try {
+                for (HnswIndex.Match match : index.search(vector, 1, settings.efSearch())) {
+                    Entry entry = entries[match.id()];
+                    if (match.similarity() >= settings.similarityThreshold() && entry.createdAtMillis() >= notBeforeMillis) {
+                        return Optional.of(entry.reply());
+                    }
+                }
+                return Optional.empty();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void add(Entry entry) {
+            lock.writeLock().lock();
+            try {
+                while (order.size() >= settings.maxEntries()) {
+                    remove(order.pollFirst());
+                }
+                if (index.isFull()) {
+                    rebuild();
+                }
+                int id = index.add(entry.vector());
+                entries[id] = entry;
+                order.addLast(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Insertion order is creation order, so expired entries are always at the head
+        void evictOlderThan(long cutoffMillis) {
+            lock.writeLock().lock();
+            try {
+                while (!order.isEmpty() && entries[order.peekFirst()].createdAtMillis() < cutoffMillis) {
+                    remove(order.pollFirst());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        int liveCount() {
+            lock.readLock().lock();
+            try {
+                return order.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<Entry> liveEntries() {
+            lock.readLock().lock();
+            try {
+                List<Entry> live = new ArrayList<>(order.size());
+                for (int id : order) {
+                    live.add(entries[id]);
+                }
+                return live;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void remove(int id) {
+            index.markDeleted(id);
+            entries[id] = null;
+        }
+
+        private void rebuild() {
+            List<Entry> live = new ArrayList<>(order.size());
+            for (int id : order) {
+                live.add(entries[id]);
+            }
+            reset();
+            for (Entry entry : live) {
+                int id = index.add(entry.vector());
+                entries[id] = entry;
+                order.addLast(id);
+            }
+        }
+
+        private void reset() {
+            index = new HnswIndex(embeddingProvider.dimensions(), capacity, settings.m(), settings.efConstruction(), capacity);
+            entries = new Entry[capacity];
+            order = new ArrayDeque<>();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.models.Message;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes streamed assistant replies to the database while they stream. Chunks are buffered
+ * per stream and checkpointed every {@code batch-chunks} chunks or {@code batch-interval},
+ * whichever comes first, and the row is finalized when the stream ends. The interval is timed
+ * from the first buffered chunk, so text is checkpointed even if the provider stalls. All JDBC work runs on
+ * a small bounded pool, never on the Reactor thread delivering chunks; each stream has at most
+ * one write in flight, so its writes apply in order. A final write that fails is retried with
+ * backoff up to {@value #MAX_FINAL_ATTEMPTS} times before the row is left to the stale sweep.
+ */
+@Component
+public class AssistantStreamPersister {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssistantStreamPersister.class);
+
+    static final int MAX_FINAL_ATTEMPTS = 5;
+    private static final Duration FINAL_RETRY_BACKOFF = Duration.ofMillis(500);
+
+    private final MessageService messageService;
+    private final ConversationSummarizer conversationSummarizer;
+    private final ThreadPoolExecutor executor;
+    // Only hands work to the executor after a delay; never touches the database itself
+    private final ScheduledThreadPoolExecutor timer;
+    private final int batchChunks;
+    private final long batchIntervalNanos;
+    private final Duration staleAfter;
+
+    // Final writes the pool rejected; retried by the scheduler so no completed reply is dropped
+    private final Queue<PersistedStream> deferred = new ConcurrentLinkedQueue<>();
+
+    public AssistantStreamPersister(MessageService messageService,
+                                    ConversationSummarizer conversationSummarizer,
+                                    @Value("${app.chat.persist.pool-size:4}") int poolSize,
+                                    @Value("${app.chat.persist.queue-capacity:1000}") int queueCapacity,
+                                    @Value("${app.chat.persist.batch-chunks:32}") int batchChunks,
+                                    @Value("${app.chat.persist.batch-interval:PT1S}") Duration batchInterval,
+                                    @Value("${app.chat.persist.stale-after:PT10M}") Duration staleAfter) {
+        this.messageService = messageService;
+        this.conversationSummarizer = conversationSummarizer;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("assistant-persist-"));
+        this.timer = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("assistant-persist-timer-"));
+        this.timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.batchChunks = batchChunks;
+        this.batchIntervalNanos = batchInterval.toNanos();
+        this.staleAfter = staleAfter;
+    }
+
+    // messageId is the STREAMING placeholder from MessageService.startAssistantMessage
+    public PersistedStream open(Long messageId, Long conversationId) {
+        return new PersistedStream(messageId, conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.persist.retry-interval:PT1S}")
+    void retryDeferred() {
+        PersistedStream stream;
+        while ((stream = deferred.poll()) != null) {
+            stream.write();
+        }
+    }
+
+    // Rows left STREAMING by a node that died mid-reply
+    @Scheduled(fixedDelayString = "${app.chat.persist.stale-sweep-interval:PT5M}")
+    void interruptStaleStreams() {
+        int interrupted = messageService.interruptStaleStreams(LocalDateTime.now().minus(staleAfter));
+        if (interrupted > 0) {
+            logger.info("Marked {} abandoned streaming replies as interrupted", interrupted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        timer.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        retryDeferred();
+    }
+
+    public final class PersistedStream {
+
+        private final Long messageId;
+        private final Long conversationId;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+        // Guarded by this
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingChunks;
+        private long lastWriteNanos = System.nanoTime();
+        private boolean flushArmed;
+        private boolean hasContent;
+        private Message.MessageStatus finalStatus;
+        private boolean finished;
+        private int finalAttempts;
+
+        private PersistedStream(Long messageId, Long conversationId) {
+            this.messageId = messageId;
+            this.conversationId = conversationId;
+        }
+
+        public Long getMessageId() {
+            return messageId;
+        }
+
+        public void append(String chunk) {
+            if (chunk == null || chunk.isEmpty()) {
+                return;
+            }
+            synchronized (this) {
+                if (finalStatus != null) {
+                    return;
+                }
+                pending.append(chunk);
+                hasContent = true;
+                pendingChunks++;
+            }
+            checkpointIfDue();
+        }
+
+        // Writes buffered text once a batch is due, otherwise makes sure a timed flush will
+        private void checkpointIfDue() {
+            boolean due;
+            boolean armFlush = false;
+            synchronized (this) {
+                if (pending.length() == 0 || finalStatus != null) {
+                    return;
+                }
+                due = pendingChunks >= batchChunks || System.nanoTime() - lastWriteNanos >= batchIntervalNanos;
+                if (!due && !flushArmed) {
+                    flushArmed = true;
+                    armFlush = true;
+                }
+            }
+            if (due) {
+                schedule(false);
+            } else if (armFlush) {
+                armTimedFlush();
+            }
+        }
+
+        private void armTimedFlush() {
+            try {
+                timer.schedule(this::timedFlush, batchIntervalNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the final write carries the text
+                synchronized (this) {
+                    flushArmed = false;
+                }
+            }
+        }
+
+        private void timedFlush() {
+            boolean due;
+            synchronized (this) {
+                flushArmed = false;
+                due = pending.length() > 0 && finalStatus == null;
+            }
+            if (due) {
+                schedule(false);
+            }
+        }
+
+        public void complete() {
+            finish(Message.MessageStatus.COMPLETE);
+        }
+
+        // Keeps whatever arrived before the error
+        public void fail() {
+            finish(Message.MessageStatus.INTERRUPTED);
+        }
+
+        private void finish(Message.MessageStatus status) {
+            synchronized (this) {
+                if (finalStatus != null) {
+                    return;
+                }
+                finalStatus = status;
+            }
+            schedule(true);
+        }
+
+        private void schedule(boolean isFinal) {
+            if (!writeScheduled.compareAndSet(false, true)) {
+                // The write in flight re-checks for a final status and due text when it finishes
+                return;
+            }
+            try {
+                executor.execute(this::write);
+            } catch (RejectedExecutionException e) {
+                if (isFinal || isFinalPending()) {
+                    deferred.add(this);
+                } else {
+                    // Skipped checkpoint: the text stays buffered for the next write
+                    writeScheduled.set(false);
+                }
+            }
+        }
+
+        private synchronized boolean isFinalPending() {
+            return finalStatus != null && !finished;
+        }
+
+        private void write() {
+            String delta;
+            Message.MessageStatus status;
+            boolean anyContent;
+            synchronized (this) {
+                delta = pending.toString();
+                pending.setLength(0);
+                pendingChunks = 0;
+                lastWriteNanos = System.nanoTime();
+                status = finished ? null : finalStatus;
+                anyContent = hasContent;
+            }
+
+            boolean written = false;
+            int retryFinalAfter = 0;
+            try {
+                if (status == null) {
+                    messageService.appendAssistantContent(messageId, delta);
+                } else {
+                    messageService.finishAssistantMessage(messageId, delta, status, anyContent);
+                }
+                written = true;
+            } catch (Exception e) {
+                logger.warn("Persisting streamed reply {} failed: {}", messageId, e.getMessage());
+                synchronized (this) {
+                    // Put the text back so the next write carries it
+                    pending.insert(0, delta);
+                    if (status != null && ++finalAttempts < MAX_FINAL_ATTEMPTS) {
+                        retryFinalAfter = finalAttempts;
+                    }
+                }
+                if (status != null && retryFinalAfter == 0) {
+                    logger.error("Giving up on finishing streamed reply {} after {} attempts", messageId, MAX_FINAL_ATTEMPTS);
+                }
+            }
+
+            synchronized (this) {
+                if (status != null && retryFinalAfter == 0) {
+                    finished = true;
+                }
+            }
+            writeScheduled.set(false);
+
+            if (retryFinalAfter > 0) {
+                retryFinal(FINAL_RETRY_BACKOFF.multipliedBy(retryFinalAfter));
+            } else if (written && status == Message.MessageStatus.COMPLETE && anyContent) {
+                conversationSummarizer.summarizeIfNeeded(conversationId);
+            } else if (isFinalPending()) {
+                schedule(true);
+            } else {
+                // Text that came due while this write was in flight was turned away by schedule()
+                checkpointIfDue();
+            }
+        }
+
+        private void retryFinal(Duration delay) {
+            try {
+                timer.schedule(() -> schedule(true), delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the scheduler's last pass picks it up
+                deferred.add(this);
+            }
+        }
+    }
+}
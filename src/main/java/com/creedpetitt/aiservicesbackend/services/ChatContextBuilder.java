@@ -0,0 +1,149 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.TokenEstimator;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.CachedContext;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.Turn;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the context sent with a new chat turn: the conversation's rolling summary (see
+ * {@link ConversationSummarizer}) plus the turns after it that fit the model's budget. Recent turns come from
+ * {@link ConversationContextCache}; on a miss the conversation tail is read newest-first in
+ * small pages until the cache's per-entry token cap is reached, so long conversations never
+ * load their full transcript.
+ */
+@Service
+public class ChatContextBuilder {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final MessageRepository messageRepository;
+    private final ConversationContextCache contextCache;
+    private final Environment environment;
+    private final int defaultMaxTokens;
+
+    public ChatContextBuilder(MessageRepository messageRepository,
+                              ConversationContextCache contextCache,
+                              Environment environment,
+                              @Value("${app.chat.context.default-max-tokens:6000}") int defaultMaxTokens) {
+        this.messageRepository = messageRepository;
+        this.contextCache = contextCache;
+        this.environment = environment;
+        this.defaultMaxTokens = defaultMaxTokens;
+    }
+
+    // Per-model override: app.chat.context.max-tokens.<model>
+    public int getTokenBudget(String aiModel) {
+        return environment.getProperty("app.chat.context.max-tokens." + aiModel, Integer.class, defaultMaxTokens);
+    }
+
+    @Transactional(readOnly = true)
+    public ChatContext buildContext(Conversation conversation, String aiModel, String prompt) {
+        if (conversation == null || conversation.getId() == null) {
+            return ChatContext.EMPTY;
+        }
+        String summary = conversation.getSummary();
+        int budget = getTokenBudget(aiModel) - TokenEstimator.estimate(prompt) - TokenEstimator.estimate(summary);
+        if (budget <= 0) {
+            return new ChatContext(summary, List.of());
+        }
+
+        // The per-entry cap is at least the largest model budget, so a cached tail always covers it.
+        // One index-only query per turn tells whether another replica has written past the cached tail
+        Long latestMessageId = messageRepository.findLatestCompleteMessageId(conversation.getId()).orElse(null);
+        CachedContext context = contextCache.get(conversation.getId(), latestMessageId, this::loadTail);
+        List<Turn> turns = afterSummary(context.turns(), conversation.getSummarizedThroughMessageId());
+        return new ChatContext(summary, toPromptMessages(selectWithinBudget(turns, budget)));
+    }
+
+    private CachedContext loadTail(Long conversationId) {
+        int maxTokens = contextCache.getMaxTokensPerEntry();
+        int tokens = 0;
+        boolean complete = false;
+
+        List<Turn> newestFirst = new ArrayList<>();
+        List<Message> page = messageRepository.findByConversationIdOrderByCreatedAtDescIdDesc(
+                conversationId, PageRequest.of(0, PAGE_SIZE));
+        boolean full = false;
+        while (true) {
+            for (Message message : page) {
+                // A reply still streaming (or cut off) is left out; it is added once it completes
+                if (message.getStatus() != null && message.getStatus() != Message.MessageStatus.COMPLETE) {
+                    continue;
+                }
+                if (message.getContent() == null || message.getContent().isBlank()) {
+                    continue;
+                }
+                Turn turn = Turn.of(message);
+                if (tokens + turn.tokens() > maxTokens) {
+                    full = true;
+                    break;
+                }
+                tokens += turn.tokens();
+                newestFirst.add(turn);
+            }
+            if (full) {
+                break;
+            }
+            if (page.size() < PAGE_SIZE) {
+                complete = true;
+                break;
+            }
+            Message oldest = page.get(page.size() - 1);
+            page = messageRepository.findPageBefore(conversationId, oldest.getCreatedAt(), oldest.getId(),
+                    PageRequest.of(0, PAGE_SIZE));
+        }
+
+        Collections.reverse(newestFirst);
+        return new CachedContext(newestFirst, complete, tokens);
+    }
+
+    private static List<Turn> afterSummary(List<Turn> turns, Long summarizedThroughMessageId) {
+        if (summarizedThroughMessageId == null) {
+            return turns;
+        }
+        int start = 0;
+        while (start < turns.size() && turns.get(start).messageId() <= summarizedThroughMessageId) {
+            start++;
+        }
+        return turns.subList(start, turns.size());
+    }
+
+    private static List<Turn> selectWithinBudget(List<Turn> turns, int budget) {
+        int start = turns.size();
+        int remaining = budget;
+        while (start > 0 && turns.get(start - 1).tokens() <= remaining) {
+            start--;
+            remaining -= turns.get(start).tokens();
+        }
+        return turns.subList(start, turns.size());
+    }
+
+    private static List<org.springframework.ai.chat.messages.Message> toPromptMessages(List<Turn> turns) {
+        List<org.springframework.ai.chat.messages.Message> history = new ArrayList<>(turns.size());
+        for (Turn turn : turns) {
+            // Providers expect the history to open with a user turn
+            if (history.isEmpty() && turn.type() != Message.MessageType.USER) {
+                continue;
+            }
+            history.add(turn.type() == Message.MessageType.USER
+                    ? new UserMessage(turn.content())
+                    : new AssistantMessage(turn.content()));
+        }
+        return history;
+    }
+}
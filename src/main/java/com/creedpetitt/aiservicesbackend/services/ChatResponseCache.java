@@ -0,0 +1,101 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Exact-match cache of complete replies to context-free first turns (no history, no summary,
+ * no image), keyed by model, system prompt hash and the normalized prompt. Canned prompts from
+ * the UI are then answered without a provider call; a hit is replayed as a stream of
+ * {@code replay-chunk-chars} chunks so clients see the usual SSE events. Off unless
+ * {@code app.chat.response-cache.enabled=true}. Hits and misses are published as
+ * {@code cache.gets{cache=chat.response}}.
+ */
+@Component
+public class ChatResponseCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    public record Key(String model, String systemPromptHash, String prompt) {}
+
+    private final boolean enabled;
+    private final int replayChunkChars;
+    private final Cache<Key, String> cache;
+
+    public ChatResponseCache(MeterRegistry meterRegistry,
+                             @Value("${app.chat.response-cache.enabled:false}") boolean enabled,
+                             @Value("${app.chat.response-cache.max-size:32MB}") DataSize maxSize,
+                             @Value("${app.chat.response-cache.ttl:PT1H}") Duration ttl,
+                             @Value("${app.chat.response-cache.replay-chunk-chars:64}") int replayChunkChars) {
+        this.enabled = enabled;
+        this.replayChunkChars = Math.max(1, replayChunkChars);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, String reply) -> ENTRY_OVERHEAD_BYTES + 2 * (key.prompt().length() + reply.length()))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chat.response");
+    }
+
+    // Null when caching is off or the turn depends on anything besides the prompt
+    public Key keyFor(ChatService chatService, ChatContext context, String prompt, String imageUrl) {
+        if (!enabled || !context.isEmpty() || (imageUrl != null && !imageUrl.isBlank())) {
+            return null;
+        }
+        return key(chatService, prompt);
+    }
+
+    // Identity of a context-free turn: same model, same system prompt, same normalized text
+    public static Key key(ChatService chatService, String prompt) {
+        String systemPromptHash = DigestUtils.md5DigestAsHex(
+                chatService.getSystemPrompt(ChatContext.EMPTY).getBytes(StandardCharsets.UTF_8));
+        return new Key(chatService.getModel(), systemPromptHash, normalize(prompt));
+    }
+
+    public Optional<String> get(Key key) {
+        return Optional.ofNullable(cache.getIfPresent(key));
+    }
+
+    public void put(Key key, String reply) {
+        if (reply != null && !reply.isBlank()) {
+            cache.put(key, reply);
+        }
+    }
+
+    public Flux<String> replay(String reply) {
+        List<String> chunks = new ArrayList<>(reply.length() / replayChunkChars + 1);
+        int start = 0;
+        while (start < reply.length()) {
+            int end = Math.min(reply.length(), start + replayChunkChars);
+            // Don't split a surrogate pair across events
+            if (end < reply.length() && Character.isHighSurrogate(reply.charAt(end - 1))) {
+                end++;
+            }
+            chunks.add(reply.substring(start, end));
+            start = end;
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    // Same text modulo Unicode form and whitespace; case is kept since it can change the answer
+    static String normalize(String prompt) {
+        return Normalizer.normalize(prompt, Normalizer.Form.NFC).strip().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,238 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends a turn to its model's provider with a fallback behind it
+ * ({@code app.chat.routing.fallback.<model>}). If the provider fails or misses the
+ * {@code first-token-timeout} before its first token, the turn is retried on the fallback;
+ * once tokens have gone out, errors reach the client as before. With {@code hedge.enabled}
+ * the fallback is instead started after the provider's recent p95 time-to-first-token, and
+ * whichever answers first is kept while the other is cancelled.
+ *
+ * <p>A provider that fails {@code failure-threshold} times in a row is skipped in favour of
+ * its fallback for {@code cooldown}; the first turn after that probes it again.
+ *
+ * <p>The caller's {@code servedBy} is set to the provider whose tokens are streamed, so a reply
+ * from a fallback isn't mistaken for the requested model's.
+ */
+@Service
+public class ChatRouter {
+
+    private static final int LATENCY_WINDOW = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final ChatServiceFactory chatServiceFactory;
+    private final Environment environment;
+    private final Duration firstTokenTimeout;
+    private final boolean hedgeEnabled;
+    private final Duration hedgeInitialDelay;
+    private final Duration hedgeMinDelay;
+    private final int failureThreshold;
+    private final Duration cooldown;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ProviderHealth> health = new ConcurrentHashMap<>();
+
+    public ChatRouter(ChatServiceFactory chatServiceFactory,
+                      Environment environment,
+                      @Value("${app.chat.routing.first-token-timeout:PT15S}") Duration firstTokenTimeout,
+                      @Value("${app.chat.routing.hedge.enabled:false}") boolean hedgeEnabled,
+                      @Value("${app.chat.routing.hedge.initial-delay:PT3S}") Duration hedgeInitialDelay,
+                      @Value("${app.chat.routing.hedge.min-delay:PT0.5S}") Duration hedgeMinDelay,
+                      @Value("${app.chat.routing.failure-threshold:3}") int failureThreshold,
+                      @Value("${app.chat.routing.cooldown:PT30S}") Duration cooldown,
+                      MeterRegistry meterRegistry) {
+        this.chatServiceFactory = chatServiceFactory;
+        this.environment = environment;
+        this.firstTokenTimeout = firstTokenTimeout;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeInitialDelay = hedgeInitialDelay;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.failureThreshold = failureThreshold;
+        this.cooldown = cooldown;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<String> getResponseStream(ChatService chatService, ChatContext context, String prompt, String imageUrl,
+                                          AtomicReference<ChatService> servedBy) {
+        ChatService fallback = fallbackFor(chatService, imageUrl);
+        if (fallback == null) {
+            return attempt(chatService, context, prompt, imageUrl, false)
+                    .doOnNext(chunk -> servedBy.set(chatService));
+        }
+        ChatService first = chatService;
+        ChatService second = fallback;
+        // The unhealthy provider stays as the second choice, so a turn only fails if both do
+        if (!healthOf(chatService).isAvailable() && healthOf(fallback).isAvailable()) {
+            meterRegistry.counter("chat.routing.failover", "from", chatService.getModel(), "to", fallback.getModel(),
+                    "reason", "unhealthy").increment();
+            first = fallback;
+            second = chatService;
+        }
+        return hedgeEnabled
+                ? hedge(first, second, context, prompt, imageUrl, servedBy)
+                : failover(first, second, context, prompt, imageUrl, servedBy);
+    }
+
+    boolean isAvailable(String aiModel) {
+        return healthOf(aiModel).isAvailable();
+    }
+
+    private Flux<String> failover(ChatService first, ChatService second, ChatContext context, String prompt, String imageUrl,
+                                  AtomicReference<ChatService> servedBy) {
+        Flux<String> primary = attempt(first, context, prompt, imageUrl, true);
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            return primary
+                    .doOnNext(chunk -> {
+                        started.set(true);
+                        servedBy.set(first);
+                    })
+                    .onErrorResume(error -> !started.get(), error -> {
+                        meterRegistry.counter("chat.routing.failover", "from", first.getModel(), "to", second.getModel(),
+                                "reason", error instanceof TimeoutException ? "first_token_timeout" : "error").increment();
+                        return attempt(second, context, prompt, imageUrl, false)
+                                .doOnNext(chunk -> servedBy.set(second));
+                    });
+        });
+    }
+
+    private Flux<String> hedge(ChatService first, ChatService second, ChatContext context, String prompt, String imageUrl,
+                               AtomicReference<ChatService> servedBy) {
+        Flux<String> primary = attempt(first, context, prompt, imageUrl, true);
+        Duration delay = hedgeDelay(first);
+        return Flux.defer(() -> {
+            // The hedge starts early if the first provider fails before the delay is up
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Mono<Void> trigger = Mono.firstWithSignal(Mono.delay(delay).then(), primaryFailed.asMono())
+                    .doOnSuccess(ignored -> meterRegistry.counter("chat.routing.hedged", "model", first.getModel()).increment());
+            Flux<String> hedged = trigger.thenMany(Flux.defer(() -> attempt(second, context, prompt, imageUrl, false)));
+            // The first stream to produce a token is kept and the other one is cancelled; chunks carry
+            // their provider so servedBy names the winner even if both produced a token at once.
+            // A win is counted from the first chunk that actually reaches the caller
+            AtomicBoolean decided = new AtomicBoolean();
+            return Flux.firstWithValue(
+                            primary.doOnError(error -> primaryFailed.tryEmitEmpty()).map(text -> new Chunk(first, text)),
+                            hedged.map(text -> new Chunk(second, text)))
+                    .doOnNext(chunk -> {
+                        servedBy.set(chunk.chatService());
+                        if (decided.compareAndSet(false, true) && chunk.chatService() == second) {
+                            meterRegistry.counter("chat.routing.hedge.wins", "model", second.getModel()).increment();
+                        }
+                    })
+                    .map(Chunk::text);
+        });
+    }
+
+    // Wraps one provider call with health and time-to-first-token tracking
+    private Flux<String> attempt(ChatService chatService, ChatContext context, String prompt, String imageUrl, boolean deadline) {
+        Flux<String> stream = chatService.getResponseStream(context, prompt, imageUrl);
+        Flux<String> timed = deadline
+                ? stream.timeout(Mono.delay(firstTokenTimeout), chunk -> Mono.never())
+                : stream;
+        ProviderHealth providerHealth = healthOf(chatService);
+        return Flux.defer(() -> {
+            long startedAt = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean();
+            return timed
+                    .doOnNext(chunk -> {
+                        if (firstToken.compareAndSet(false, true)) {
+                            long elapsed = System.nanoTime() - startedAt;
+                            providerHealth.recordFirstToken(elapsed);
+                            meterRegistry.timer("chat.provider.first_token", "model", chatService.getModel())
+                                    .record(elapsed, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(error -> providerHealth.recordFailure());
+        });
+    }
+
+    private Duration hedgeDelay(ChatService chatService) {
+        long p95 = healthOf(chatService).firstTokenP95();
+        Duration delay = p95 < 0 ? hedgeInitialDelay : Duration.ofNanos(p95);
+        return delay.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : delay;
+    }
+
+    private ChatService fallbackFor(ChatService chatService, String imageUrl) {
+        String aiModel = environment.getProperty("app.chat.routing.fallback." + chatService.getModel());
+        if (aiModel == null || aiModel.isBlank() || aiModel.equals(chatService.getModel())) {
+            return null;
+        }
+        ChatService fallback = chatServiceFactory.getChatService(aiModel.trim());
+        boolean hasImage = imageUrl != null && !imageUrl.isBlank();
+        if (fallback == null || (hasImage && !fallback.supportsVision())) {
+            return null;
+        }
+        return fallback;
+    }
+
+    private ProviderHealth healthOf(ChatService chatService) {
+        return healthOf(chatService.getModel());
+    }
+
+    private ProviderHealth healthOf(String aiModel) {
+        return health.computeIfAbsent(aiModel, model -> new ProviderHealth());
+    }
+
+    private record Chunk(ChatService chatService, String text) {
+    }
+
+    private final class ProviderHealth {
+
+        // Recent times to first token, in nanoseconds, as a ring
+        private final long[] firstTokenNanos = new long[LATENCY_WINDOW];
+        private int samples;
+        private int next;
+        private int consecutiveFailures;
+        private boolean tripped;
+        private long retryAt;
+
+        synchronized boolean isAvailable() {
+            return !tripped || System.nanoTime() - retryAt >= 0;
+        }
+
+        synchronized void recordFirstToken(long nanos) {
+            firstTokenNanos[next] = nanos;
+            next = (next + 1) % LATENCY_WINDOW;
+            samples = Math.min(samples + 1, LATENCY_WINDOW);
+            consecutiveFailures = 0;
+            tripped = false;
+        }
+
+        // A provider probed after its cooldown is skipped again on its first failure
+        synchronized void recordFailure() {
+            if (++consecutiveFailures >= failureThreshold) {
+                tripped = true;
+                retryAt = System.nanoTime() + cooldown.toNanos();
+            }
+        }
+
+        // -1 until there are enough samples to trust it
+        synchronized long firstTokenP95() {
+            if (samples < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(firstTokenNanos, samples);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(samples * 0.95) - 1];
+        }
+    }
+}
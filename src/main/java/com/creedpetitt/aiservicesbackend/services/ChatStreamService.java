@@ -0,0 +1,203 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.TokenEstimator;
+import com.creedpetitt.aiservicesbackend.dto.StreamMessageRequestDto;
+import com.creedpetitt.aiservicesbackend.models.AppUser;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Everything a chat turn needs before tokens flow, shared by the SseEmitter and the
+ * Flux endpoints: validation, rate limits and quota, the conversation, its context, the stored
+ * user message and the assistant placeholder. Returns the provider stream with persistence
+ * attached, coalesced into client-sized events by {@link ChunkCoalescer}; cancelling it cancels the provider call and keeps the partial reply as INTERRUPTED.
+ *
+ * <p>Cancelled streams are counted in {@code chat.stream.aborted}. {@code chat.stream.tokens.saved}
+ * estimates what each cancellation avoided: the model's typical reply length (a moving average
+ * of completed replies) minus what had already been generated.
+ */
+@Service
+public class ChatStreamService {
+
+    private final ConversationService conversationService;
+    private final MessageService messageService;
+    private final ChatServiceFactory chatServiceFactory;
+    private final RateLimitingService rateLimitingService;
+    private final ChatContextBuilder chatContextBuilder;
+    private final AssistantStreamPersister streamPersister;
+    private final ChunkCoalescer chunkCoalescer;
+    private final ChatResponseCache responseCache;
+    private final SemanticResponseCache semanticCache;
+    private final GenerationSingleFlight singleFlight;
+    private final ImageUploadService imageUploadService;
+    private final MeterRegistry meterRegistry;
+
+    // Per model, in estimated tokens
+    private final Map<String, AtomicInteger> typicalReplyTokens = new ConcurrentHashMap<>();
+
+    public ChatStreamService(ConversationService conversationService,
+                             MessageService messageService,
+                             ChatServiceFactory chatServiceFactory,
+                             RateLimitingService rateLimitingService,
+                             ChatContextBuilder chatContextBuilder,
+                             AssistantStreamPersister streamPersister,
+                             ChunkCoalescer chunkCoalescer,
+                             ChatResponseCache responseCache,
+                             SemanticResponseCache semanticCache,
+                             GenerationSingleFlight singleFlight,
+                             ImageUploadService imageUploadService,
+                             MeterRegistry meterRegistry) {
+        this.conversationService = conversationService;
+        this.messageService = messageService;
+        this.chatServiceFactory = chatServiceFactory;
+        this.rateLimitingService = rateLimitingService;
+        this.chatContextBuilder = chatContextBuilder;
+        this.streamPersister = streamPersister;
+        this.chunkCoalescer = chunkCoalescer;
+        this.responseCache = responseCache;
+        this.semanticCache = semanticCache;
+        this.singleFlight = singleFlight;
+        this.imageUploadService = imageUploadService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Throws ResponseStatusException for anything that should stop the turn before it starts
+    public Flux<String> startStream(Long conversationId, Long userId, AppUser user, StreamMessageRequestDto request) {
+        String content = request.content();
+        if (content == null || content.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Content cannot be empty.");
+        }
+
+        String imageUrl = request.imageUrl() == null || request.imageUrl().trim().isEmpty() ? null : request.imageUrl();
+        // Only the sender's own checked uploads are passed to the model
+        if (imageUrl != null && !imageUploadService.isCheckedUpload(imageUrl, userId)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image not found.");
+        }
+        String aiModel = request.aiModel();
+
+        if (aiModel == null || aiModel.trim().isEmpty()) {
+            if (conversationId == 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "aiModel must be provided for new conversations.");
+            }
+            Optional<Conversation> existingConv = conversationService.getConversation(conversationId, user);
+            if (existingConv.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found.");
+            }
+            aiModel = existingConv.get().getAiModel();
+        }
+
+        ChatService chatService = chatServiceFactory.getChatService(aiModel);
+        if (chatService == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid aiModel specified.");
+        }
+
+        // Short-window limits first (in memory), then the lifetime quota (one conditional UPDATE)
+        if (!rateLimitingService.tryAcquire(userId, aiModel)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, please slow down.");
+        }
+        if (!rateLimitingService.tryConsumeMessage(userId)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Rate limit exceeded for user.");
+        }
+
+        Conversation conversation = conversationService.getOrCreateConversation(conversationId, user, generateTitle(content), aiModel);
+
+        // Earlier turns are read before the new user message is stored, so it isn't sent twice
+        ChatContext context = conversationId != 0
+                ? chatContextBuilder.buildContext(conversation, aiModel, content)
+                : ChatContext.EMPTY;
+
+        // Context-free first turns may be answered from the exact or semantic cache; the reply is still stored as usual.
+        // Looked up before anything is stored, so a slow or failing lookup leaves no half-open turn behind
+        ChatResponseCache.Key cacheKey = responseCache.keyFor(chatService, context, content, imageUrl);
+        boolean semanticCacheable = semanticCache.isCacheable(context, imageUrl);
+        Optional<String> cachedReply = cacheKey != null ? responseCache.get(cacheKey) : Optional.empty();
+        if (cachedReply.isEmpty() && semanticCacheable) {
+            cachedReply = semanticCache.get(chatService, content);
+        }
+
+        if (imageUrl != null) {
+            messageService.addUserMessage(conversation, user, content, imageUrl);
+        } else {
+            messageService.addUserMessage(conversation, user, content);
+        }
+
+        // The reply is checkpointed into this row as it streams; chunk callbacks never touch JDBC
+        Message placeholder = messageService.startAssistantMessage(conversation, user, aiModel);
+        AssistantStreamPersister.PersistedStream persisted = streamPersister.open(placeholder.getId(), conversation.getId());
+
+        AtomicReference<ChatService> servedBy = new AtomicReference<>();
+        Flux<String> reply = cachedReply.map(responseCache::replay)
+                .orElseGet(() -> singleFlight.getResponseStream(chatService, context, content, imageUrl, servedBy));
+        StringBuilder replyToCache = cachedReply.isEmpty() && (cacheKey != null || semanticCacheable) ? new StringBuilder() : null;
+
+        String model = aiModel;
+        AtomicInteger generatedTokens = new AtomicInteger();
+        return reply
+                .doOnNext(chunk -> {
+                    persisted.append(chunk);
+                    generatedTokens.addAndGet(TokenEstimator.estimate(chunk));
+                    if (replyToCache != null) {
+                        replyToCache.append(chunk);
+                    }
+                })
+                .doFinally(signal -> {
+                    if (signal == SignalType.ON_COMPLETE) {
+                        persisted.complete();
+                        // A reply from a fallback (failover or hedge) would be cached under the wrong model
+                        if (replyToCache != null && servedBy.get() == chatService) {
+                            cacheReply(chatService, cacheKey, semanticCacheable, content, replyToCache.toString());
+                        }
+                    } else {
+                        persisted.fail();
+                    }
+                    recordOutcome(model, signal, generatedTokens.get());
+                })
+                // Persistence and token counts see raw chunks; only what goes to the client is merged
+                .transform(chunkCoalescer::coalesce);
+    }
+
+    private void cacheReply(ChatService chatService, ChatResponseCache.Key cacheKey, boolean semanticCacheable,
+                            String prompt, String reply) {
+        if (cacheKey != null) {
+            responseCache.put(cacheKey, reply);
+        }
+        if (semanticCacheable) {
+            semanticCache.put(chatService, prompt, reply);
+        }
+    }
+
+    private void recordOutcome(String aiModel, SignalType signal, int generatedTokens) {
+        if (signal == SignalType.ON_COMPLETE) {
+            typicalReplyTokens.computeIfAbsent(aiModel, model -> new AtomicInteger(generatedTokens))
+                    .updateAndGet(typical -> typical + (generatedTokens - typical) / 8);
+        } else if (signal == SignalType.CANCEL) {
+            meterRegistry.counter("chat.stream.aborted", "model", aiModel).increment();
+            AtomicInteger typical = typicalReplyTokens.get(aiModel);
+            int saved = typical == null ? 0 : Math.max(0, typical.get() - generatedTokens);
+            meterRegistry.counter("chat.stream.tokens.saved", "model", aiModel).increment(saved);
+        }
+    }
+
+    private String generateTitle(String content) {
+        String title = content.trim();
+        if (title.length() > 50) {
+            title = title.substring(0, 47) + "...";
+        }
+        return title;
+    }
+}
@@ -0,0 +1,169 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges token fragments into fewer, larger SSE events. The first chunk is passed through at
+ * once so time-to-first-token is unchanged; after that chunks are buffered until
+ * {@code max-bytes} (UTF-8) is reached or {@code max-delay} has passed since the oldest
+ * buffered chunk. While the client isn't reading, the buffer keeps growing instead of
+ * queueing events, so slow readers simply get bigger batches. {@code max-bytes=0} disables it.
+ */
+@Component
+public class ChunkCoalescer {
+
+    private final int maxBytes;
+    private final Duration maxDelay;
+    private final Scheduler timer;
+
+    public ChunkCoalescer(@Value("${app.chat.stream.coalesce.max-bytes:256}") int maxBytes,
+                          @Value("${app.chat.stream.coalesce.max-delay:PT0.02S}") Duration maxDelay) {
+        this(maxBytes, maxDelay, Schedulers.parallel());
+    }
+
+    ChunkCoalescer(int maxBytes, Duration maxDelay, Scheduler timer) {
+        this.maxBytes = maxBytes;
+        this.maxDelay = maxDelay;
+        this.timer = timer;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 && !maxDelay.isZero() && !maxDelay.isNegative();
+    }
+
+    public Flux<String> coalesce(Flux<String> chunks) {
+        if (!isEnabled()) {
+            return chunks;
+        }
+        return Flux.create(sink -> {
+            Batch batch = new Batch(sink);
+            sink.onRequest(n -> batch.drainIfDue());
+            sink.onDispose(batch::dispose);
+            chunks.subscribe(batch);
+        });
+    }
+
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private final class Batch extends BaseSubscriber<String> {
+
+        private final FluxSink<String> sink;
+        private final Object lock = new Object();
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedBytes;
+        private boolean first = true;
+        // Set once the buffer should go out; it waits only for downstream demand
+        private boolean due;
+        private Disposable pendingFlush;
+
+        Batch(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        protected void hookOnNext(String chunk) {
+            if (chunk == null || chunk.isEmpty()) {
+                return;
+            }
+            synchronized (lock) {
+                if (first) {
+                    first = false;
+                    sink.next(chunk);
+                    return;
+                }
+                buffer.append(chunk);
+                bufferedBytes += utf8Length(chunk);
+                if (bufferedBytes >= maxBytes) {
+                    due = true;
+                    drainIfDue();
+                } else if (pendingFlush == null) {
+                    pendingFlush = timer.schedule(this::onDelayElapsed, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            synchronized (lock) {
+                emit();
+            }
+            sink.complete();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (lock) {
+                emit();
+            }
+            sink.error(throwable);
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            synchronized (lock) {
+                cancelPendingFlush();
+            }
+        }
+
+        private void onDelayElapsed() {
+            synchronized (lock) {
+                pendingFlush = null;
+                due = true;
+                drainIfDue();
+            }
+        }
+
+        void drainIfDue() {
+            synchronized (lock) {
+                if (due && sink.requestedFromDownstream() > 0) {
+                    emit();
+                }
+            }
+        }
+
+        private void emit() {
+            cancelPendingFlush();
+            due = false;
+            if (!buffer.isEmpty()) {
+                String merged = buffer.toString();
+                buffer.setLength(0);
+                bufferedBytes = 0;
+                sink.next(merged);
+            }
+        }
+
+        private void cancelPendingFlush() {
+            if (pendingFlush != null) {
+                pendingFlush.dispose();
+                pendingFlush = null;
+            }
+        }
+    }
+}
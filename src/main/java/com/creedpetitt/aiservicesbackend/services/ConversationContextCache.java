@@ -0,0 +1,164 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.TokenEstimator;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Recent turns per conversation id, so follow-up messages in an active chat build their
+ * context without re-reading their history. New messages are appended after their transaction
+ * commits; deleting a conversation drops its entry. The cache is bounded by estimated bytes,
+ * and each entry keeps at most {@code maxTokensPerEntry} tokens of the newest turns.
+ *
+ * <p>Entries are per node, so turns written through another replica never reach them. Readers
+ * therefore pass the conversation's newest completed message id, and an entry that doesn't end
+ * there is reloaded. That costs every follow-up one query, a MAX(id) answered from the
+ * (conversation_id, id) index, instead of the zero a single-node cache would need; it replaces
+ * the history read (up to a full tail of rows) that the cache saves.
+ */
+@Component
+public class ConversationContextCache {
+
+    private static final int TURN_OVERHEAD_BYTES = 64;
+
+    private final Cache<Long, CachedContext> cache;
+    private final int maxTokensPerEntry;
+
+    public ConversationContextCache(MeterRegistry meterRegistry,
+                                    @Value("${app.chat.context-cache.max-size:64MB}") DataSize maxSize,
+                                    @Value("${app.chat.context-cache.max-tokens-per-entry:16000}") int maxTokensPerEntry,
+                                    @Value("${app.chat.context-cache.expire-after-access:PT30M}") Duration expireAfterAccess) {
+        this.maxTokensPerEntry = maxTokensPerEntry;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Long id, CachedContext context) -> context.estimatedBytes())
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "conversation.context");
+    }
+
+    public int getMaxTokensPerEntry() {
+        return maxTokensPerEntry;
+    }
+
+    public Optional<CachedContext> get(Long conversationId) {
+        return Optional.ofNullable(cache.getIfPresent(conversationId));
+    }
+
+    // An entry that doesn't end at latestMessageId (null: no messages) is reloaded. The loader runs
+    // under the key's lock, so appends for the same conversation wait for it
+    public CachedContext get(Long conversationId, Long latestMessageId, Function<Long, CachedContext> loader) {
+        CachedContext cached = cache.getIfPresent(conversationId);
+        if (cached != null && !Objects.equals(cached.latestMessageId(), latestMessageId)) {
+            cache.asMap().remove(conversationId, cached);
+        }
+        return cache.get(conversationId, loader);
+    }
+
+    // A brand-new conversation has no history, so its entry is complete from the start
+    public void startConversation(Long conversationId) {
+        cache.put(conversationId, new CachedContext(List.of(), true, 0));
+    }
+
+    public void append(Message message) {
+        if (message.getConversation() == null || message.getConversation().getId() == null) {
+            return;
+        }
+        Long conversationId = message.getConversation().getId();
+        Turn turn = Turn.of(message);
+        afterCommit(() -> cache.asMap().computeIfPresent(conversationId,
+                (id, context) -> context.append(turn, maxTokensPerEntry)));
+    }
+
+    public void invalidate(Long conversationId) {
+        afterCommit(() -> cache.invalidate(conversationId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public record Turn(Long messageId, Message.MessageType type, String content, int tokens) {
+
+        public static Turn of(Message message) {
+            return new Turn(message.getId(), message.getMessageType(), message.getContent(),
+                    TokenEstimator.estimate(message.getContent()));
+        }
+    }
+
+    /**
+     * Newest turns of one conversation, oldest first. {@code complete} means the list starts
+     * at the first message of the conversation rather than partway through.
+     */
+    public record CachedContext(List<Turn> turns, boolean complete, int tokens) {
+
+        public CachedContext {
+            turns = List.copyOf(turns);
+        }
+
+        // Inserts the turn in id order, or replaces the one with the same id (a streamed reply
+        // cached before it finished); older turns are dropped once the entry is over maxTokens
+        CachedContext append(Turn turn, int maxTokens) {
+            List<Turn> updated = new ArrayList<>(turns.size() + 1);
+            updated.addAll(turns);
+            int total = tokens + turn.tokens();
+            int index = updated.size();
+            if (turn.messageId() != null) {
+                while (index > 0 && updated.get(index - 1).messageId() != null
+                        && updated.get(index - 1).messageId() >= turn.messageId()) {
+                    index--;
+                }
+                if (index < updated.size() && turn.messageId().equals(updated.get(index).messageId())) {
+                    total -= updated.remove(index).tokens();
+                } else if (index == 0 && !complete && !updated.isEmpty()) {
+                    // Older than the cached window, which doesn't reach back that far
+                    return this;
+                }
+            }
+            updated.add(index, turn);
+            boolean stillComplete = complete;
+            while (total > maxTokens && updated.size() > 1) {
+                total -= updated.remove(0).tokens();
+                stillComplete = false;
+            }
+            return new CachedContext(updated, stillComplete, total);
+        }
+
+        Long latestMessageId() {
+            return turns.isEmpty() ? null : turns.get(turns.size() - 1).messageId();
+        }
+
+        int estimatedBytes() {
+            int bytes = TURN_OVERHEAD_BYTES;
+            for (Turn turn : turns) {
+                bytes += TURN_OVERHEAD_BYTES + turn.content().length() * 2;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.dto.ConversationDto;
+import com.creedpetitt.aiservicesbackend.dto.MessageDto;
+import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes a whole conversation as JSON ({@code {"conversation": ..., "messages": [...]}})
+ * straight to the response stream, one keyset page at a time. Only a single page is ever
+ * held in memory. It deliberately runs without a surrounding transaction, so a slow client
+ * never pins a database connection between pages.
+ */
+@Service
+public class ConversationExporter {
+
+    private final MessageRepository messageRepository;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final int pageSize;
+
+    public ConversationExporter(MessageRepository messageRepository,
+                                ObjectMapper objectMapper,
+                                @Value("${app.conversations.export.page-size:500}") int pageSize) {
+        this.messageRepository = messageRepository;
+        this.objectMapper = objectMapper;
+        // Flush once per page rather than after every message
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.pageSize = pageSize;
+    }
+
+    public void writeJson(ConversationDto conversation, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeFieldName("conversation");
+            writer.writeValue(generator, conversation);
+            generator.writeArrayFieldStart("messages");
+
+            PageRequest page = PageRequest.of(0, pageSize);
+            List<MessageDto> messages = messageRepository.findOldestDtos(conversation.id(), page);
+            while (!messages.isEmpty()) {
+                for (MessageDto message : messages) {
+                    writer.writeValue(generator, message);
+                }
+                generator.flush();
+                if (messages.size() < pageSize) {
+                    break;
+                }
+                MessageDto last = messages.get(messages.size() - 1);
+                messages = messageRepository.findDtosAfter(conversation.id(), last.createdAt(), last.id(), page);
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
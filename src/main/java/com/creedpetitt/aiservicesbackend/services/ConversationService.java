@@ -1,15 +1,22 @@
 package com.creedpetitt.aiservicesbackend.services;
 
+import com.creedpetitt.aiservicesbackend.dto.ConversationPageDto;
+import com.creedpetitt.aiservicesbackend.dto.ConversationSummaryDto;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.models.Conversation;
 import com.creedpetitt.aiservicesbackend.repositories.ConversationRepository;
 import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,10 +26,19 @@ public class ConversationService {
 
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
+    private final ConversationContextCache contextCache;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
-    public ConversationService(ConversationRepository conversationRepository, MessageRepository messageRepository) {
+    public ConversationService(ConversationRepository conversationRepository, MessageRepository messageRepository,
+                               ConversationContextCache contextCache,
+                               @Value("${app.conversations.default-page-size:20}") int defaultPageSize,
+                               @Value("${app.conversations.max-page-size:100}") int maxPageSize) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
+        this.contextCache = contextCache;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     public Conversation createConversation(AppUser user, String title, String aiModel) {
@@ -36,7 +52,9 @@ public class ConversationService {
         }
 
         Conversation conversation = new Conversation(user, title, aiModel);
-        return conversationRepository.save(conversation);
+        Conversation saved = conversationRepository.save(conversation);
+        contextCache.startConversation(saved.getId());
+        return saved;
     }
 
     public Conversation saveConversation(Conversation conversation) {
@@ -59,12 +77,37 @@ public class ConversationService {
         return conversationRepository.findByIdAndUserId(conversationId, user.getId());
     }
 
+    /**
+     * One page of the user's conversations, most recently updated first. {@code cursor} is the
+     * opaque {@code nextCursor} of the previous page; {@code includePreview} adds the message
+     * count and a preview of the newest message to each row.
+     */
     @Transactional(readOnly = true)
-    public List<Conversation> getUserConversations(AppUser user) {
+    public ConversationPageDto getConversationPage(AppUser user, String cursor, Integer limit, boolean includePreview) {
         if (user == null) {
             throw new IllegalArgumentException("User cannot be null");
         }
-        return conversationRepository.findByUserIdOrderByUpdatedAtDesc(user.getId());
+        int size = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<ConversationSummaryDto> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = includePreview
+                    ? conversationRepository.findSummariesWithPreview(user.getId(), page)
+                    : conversationRepository.findSummaries(user.getId(), page);
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            rows = includePreview
+                    ? conversationRepository.findSummariesWithPreviewBefore(user.getId(), after.updatedAt(), after.id(), page)
+                    : conversationRepository.findSummariesBefore(user.getId(), after.updatedAt(), after.id(), page);
+        }
+
+        if (rows.size() <= size) {
+            return new ConversationPageDto(rows, null);
+        }
+        List<ConversationSummaryDto> conversations = rows.subList(0, size);
+        ConversationSummaryDto last = conversations.get(size - 1);
+        return new ConversationPageDto(List.copyOf(conversations), new PageCursor(last.updatedAt(), last.id()).encode());
     }
 
     public void updateConversationTimestamp(Conversation conversation) {
@@ -72,10 +115,15 @@ public class ConversationService {
         conversationRepository.save(conversation);
     }
 
+    public boolean saveSummary(Long conversationId, String summary, Long summarizedThroughMessageId) {
+        return conversationRepository.updateSummary(conversationId, summary, summarizedThroughMessageId) > 0;
+    }
+
     public void deleteConversation(Long conversationId, AppUser user) {
         conversationRepository.findByIdAndUserId(conversationId, user.getId()).ifPresent(conversation -> {
             messageRepository.deleteAllByConversation(conversation);
             conversationRepository.delete(conversation);
+            contextCache.invalidate(conversationId);
         });
     }
 
@@ -86,4 +134,24 @@ public class ConversationService {
         return getConversation(id, user)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
     }
+
+    // Position of the last row of a page; clients only ever see it base64url-encoded
+    private record PageCursor(LocalDateTime updatedAt, Long id) {
+
+        String encode() {
+            String raw = updatedAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new PageCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor.");
+            }
+        }
+    }
 }
\ No newline at end of file
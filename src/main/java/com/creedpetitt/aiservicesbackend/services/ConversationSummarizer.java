@@ -0,0 +1,175 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.TokenEstimator;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.CachedContext;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.Turn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compacts older turns of a long conversation into {@link Conversation#getSummary()} so
+ * prompts stay small. Runs in the background after a streamed reply has been stored; once
+ * the unsummarized turns pass {@code trigger-tokens}, everything but the newest
+ * {@code keep-recent-turns} is folded into the existing summary by the configured (cheap) model.
+ */
+@Service
+public class ConversationSummarizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationSummarizer.class);
+
+    private static final String SYSTEM_PROMPT =
+        "You maintain a running summary of a conversation between a user and an AI assistant. " +
+        "Merge the new messages into the existing summary. Keep facts, decisions, names, code " +
+        "identifiers and open questions; drop pleasantries and formatting. Write plain prose in " +
+        "the third person.";
+
+    private final ConversationService conversationService;
+    private final MessageRepository messageRepository;
+    private final ConversationContextCache contextCache;
+    private final ChatServiceFactory chatServiceFactory;
+    private final String summaryModel;
+    private final int triggerTokens;
+    private final int keepRecentTurns;
+    private final int maxMessages;
+    private final int maxWords;
+
+    private final Set<Long> inProgress = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(ConversationService conversationService,
+                                  MessageRepository messageRepository,
+                                  ConversationContextCache contextCache,
+                                  ChatServiceFactory chatServiceFactory,
+                                  @Value("${app.chat.summary.model:gemini}") String summaryModel,
+                                  @Value("${app.chat.summary.trigger-tokens:4000}") int triggerTokens,
+                                  @Value("${app.chat.summary.keep-recent-turns:6}") int keepRecentTurns,
+                                  @Value("${app.chat.summary.max-messages:200}") int maxMessages,
+                                  @Value("${app.chat.summary.max-words:300}") int maxWords) {
+        this.conversationService = conversationService;
+        this.messageRepository = messageRepository;
+        this.contextCache = contextCache;
+        this.chatServiceFactory = chatServiceFactory;
+        this.summaryModel = summaryModel;
+        this.triggerTokens = triggerTokens;
+        this.keepRecentTurns = keepRecentTurns;
+        this.maxMessages = maxMessages;
+        this.maxWords = maxWords;
+    }
+
+    @Async
+    public void summarizeIfNeeded(Long conversationId) {
+        // One run per conversation at a time; the next completed turn picks up anything skipped
+        if (conversationId == null || !inProgress.add(conversationId)) {
+            return;
+        }
+        try {
+            summarize(conversationId);
+        } catch (Exception e) {
+            logger.warn("Summarizing conversation {} failed: {}", conversationId, e.getMessage());
+        } finally {
+            inProgress.remove(conversationId);
+        }
+    }
+
+    // Returns true when a new summary was stored
+    boolean summarize(Long conversationId) {
+        Optional<Conversation> conversation = conversationService.getConversationById(conversationId);
+        if (conversation.isEmpty()) {
+            return false;
+        }
+        Long summarizedThrough = conversation.get().getSummarizedThroughMessageId();
+        long after = summarizedThrough != null ? summarizedThrough : 0L;
+        if (isBelowTrigger(conversationId, after)) {
+            return false;
+        }
+
+        List<Message> messages = messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(
+                conversationId, after, PageRequest.of(0, maxMessages));
+        // Nothing from a reply that is still streaming onward may be folded into the summary
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getStatus() == Message.MessageStatus.STREAMING) {
+                messages = messages.subList(0, i);
+                break;
+            }
+        }
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += TokenEstimator.estimate(message.getContent());
+        }
+        if (tokens < triggerTokens) {
+            return false;
+        }
+
+        int cut = messages.size() - keepRecentTurns;
+        // Keep the retained history opening on a user turn so no reply is orphaned
+        while (cut > 0 && messages.get(cut).getMessageType() != Message.MessageType.USER) {
+            cut--;
+        }
+        if (cut <= 0) {
+            return false;
+        }
+        List<Message> toSummarize = messages.subList(0, cut);
+
+        ChatService chatService = chatServiceFactory.getChatService(summaryModel);
+        if (chatService == null) {
+            chatService = chatServiceFactory.getChatService(conversation.get().getAiModel());
+        }
+        if (chatService == null) {
+            return false;
+        }
+
+        String summary = chatService.generate(SYSTEM_PROMPT,
+                buildPrompt(conversation.get().getSummary(), toSummarize));
+        if (summary == null || summary.isBlank()) {
+            return false;
+        }
+        Long throughId = toSummarize.get(toSummarize.size() - 1).getId();
+        return conversationService.saveSummary(conversationId, summary.trim(), throughId);
+    }
+
+    // Cheap pre-check against cached turns; only a definite "not yet" skips the database
+    private boolean isBelowTrigger(Long conversationId, long summarizedThrough) {
+        Optional<CachedContext> cached = contextCache.get(conversationId);
+        if (cached.isEmpty()) {
+            return false;
+        }
+        boolean coversUnsummarized = cached.get().complete();
+        int tokens = 0;
+        for (Turn turn : cached.get().turns()) {
+            if (turn.messageId() <= summarizedThrough) {
+                coversUnsummarized = true;
+            } else {
+                tokens += turn.tokens();
+            }
+        }
+        return tokens < triggerTokens && coversUnsummarized;
+    }
+
+    private String buildPrompt(String existingSummary, List<Message> messages) {
+        StringBuilder prompt = new StringBuilder();
+        if (existingSummary != null && !existingSummary.isBlank()) {
+            prompt.append("Existing summary:\n").append(existingSummary).append("\n\n");
+        }
+        prompt.append("New messages:\n");
+        for (Message message : messages) {
+            prompt.append(message.getMessageType() == Message.MessageType.USER ? "User: " : "Assistant: ")
+                    .append(message.getContent())
+                    .append("\n\n");
+        }
+        prompt.append("Write the updated summary in at most ").append(maxWords).append(" words.");
+        return prompt.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-flight for identical context-free turns: while a generation for the same model,
+ * system prompt and normalized prompt is running, later requests subscribe to it instead of
+ * opening another provider stream (through {@link ChatRouter}, so a failed-over
+ * generation is shared too). The shared stream replays from the first chunk, so a
+ * follower gets the whole reply; each caller still persists its own assistant message. The
+ * provider call is cancelled only when every subscriber has gone; followers also learn which
+ * provider served the shared reply through their {@code servedBy}. Enabled per model with
+ * {@code app.chat.single-flight.enabled.<model>}, falling back to {@code default-enabled}
+ * (off).
+ */
+@Component
+public class GenerationSingleFlight {
+
+    private final Map<ChatResponseCache.Key, SharedGeneration> inFlight = new ConcurrentHashMap<>();
+    private final ChatRouter chatRouter;
+    private final Environment environment;
+    private final boolean defaultEnabled;
+    private final MeterRegistry meterRegistry;
+
+    public GenerationSingleFlight(ChatRouter chatRouter,
+                                  Environment environment,
+                                  @Value("${app.chat.single-flight.default-enabled:false}") boolean defaultEnabled,
+                                  MeterRegistry meterRegistry) {
+        this.chatRouter = chatRouter;
+        this.environment = environment;
+        this.defaultEnabled = defaultEnabled;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<String> getResponseStream(ChatService chatService, ChatContext context, String prompt, String imageUrl,
+                                          AtomicReference<ChatService> servedBy) {
+        if (!context.isEmpty() || (imageUrl != null && !imageUrl.isBlank()) || !isEnabled(chatService.getModel())) {
+            return chatRouter.getResponseStream(chatService, context, prompt, imageUrl, servedBy);
+        }
+        ChatResponseCache.Key key = ChatResponseCache.key(chatService, prompt);
+        SharedGeneration running = inFlight.get(key);
+        if (running != null) {
+            return join(chatService, running, servedBy);
+        }
+
+        // Provider streams are cold, so building one that loses the race below costs nothing
+        AtomicReference<SharedGeneration> self = new AtomicReference<>();
+        AtomicReference<ChatService> generationServedBy = new AtomicReference<>();
+        Flux<String> stream = chatRouter.getResponseStream(chatService, context, prompt, imageUrl, generationServedBy)
+                // Once it ends (or everyone left), new requests start their own generation or hit the response cache
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .replay()
+                .refCount(1);
+        SharedGeneration generation = new SharedGeneration(stream, generationServedBy);
+        self.set(generation);
+        running = inFlight.putIfAbsent(key, generation);
+        return running != null ? join(chatService, running, servedBy) : follow(generation, servedBy);
+    }
+
+    private Flux<String> join(ChatService chatService, SharedGeneration running, AtomicReference<ChatService> servedBy) {
+        meterRegistry.counter("chat.single_flight.joined", "model", chatService.getModel()).increment();
+        return follow(running, servedBy);
+    }
+
+    // The router sets the generation's servedBy before each chunk is replayed
+    private static Flux<String> follow(SharedGeneration generation, AtomicReference<ChatService> servedBy) {
+        return generation.stream().doOnNext(chunk -> servedBy.set(generation.servedBy().get()));
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    // Per-model override: app.chat.single-flight.enabled.<model>
+    private boolean isEnabled(String aiModel) {
+        return environment.getProperty("app.chat.single-flight.enabled." + aiModel, Boolean.class, defaultEnabled);
+    }
+
+    private record SharedGeneration(Flux<String> stream, AtomicReference<ChatService> servedBy) {
+    }
+}
@@ -0,0 +1,214 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ImageService;
+import com.creedpetitt.aiservicesbackend.aiservices.ImageServiceFactory;
+import com.creedpetitt.aiservicesbackend.dto.ImageJobDto;
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs image jobs on a bounded pool: {@code pool-size} is the most provider calls this node
+ * makes at once, and up to {@code queue-capacity} more wait for a worker. A job is claimed
+ * with a conditional UPDATE before it runs, so it is generated once even if it was queued
+ * twice or on two nodes. Jobs left QUEUED or RUNNING by a node that went away are picked up
+ * again at startup and every {@code recovery-interval}.
+ *
+ * <p>Completions are published to watchers on this node right away; watchers of a job
+ * running elsewhere see it by polling the row every {@code poll-interval}.
+ */
+@Component
+public class ImageJobExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageJobExecutor.class);
+
+    static final int MAX_COMPLETE_ATTEMPTS = 3;
+    private static final Duration COMPLETE_RETRY_BACKOFF = Duration.ofMillis(500);
+
+    private final ImageJobService imageJobService;
+    private final ImageServiceFactory imageServiceFactory;
+    private final RateLimitingService rateLimitingService;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final Duration pollInterval;
+    private final Duration requeueAfter;
+    private final Duration staleAfter;
+    private final Sinks.Many<ImageJobDto> completions = Sinks.many().multicast().directBestEffort();
+    // Ids waiting in this node's queue, so recovery doesn't queue them twice
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    public ImageJobExecutor(ImageJobService imageJobService,
+                            ImageServiceFactory imageServiceFactory,
+                            RateLimitingService rateLimitingService,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.images.jobs.pool-size:4}") int poolSize,
+                            @Value("${app.images.jobs.queue-capacity:100}") int queueCapacity,
+                            @Value("${app.images.jobs.poll-interval:PT2S}") Duration pollInterval,
+                            @Value("${app.images.jobs.requeue-after:PT2M}") Duration requeueAfter,
+                            @Value("${app.images.jobs.stale-after:PT10M}") Duration staleAfter) {
+        this.imageJobService = imageJobService;
+        this.imageServiceFactory = imageServiceFactory;
+        this.rateLimitingService = rateLimitingService;
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("image-job-"));
+        this.pollInterval = pollInterval;
+        this.requeueAfter = requeueAfter;
+        this.staleAfter = staleAfter;
+    }
+
+    // Throws 503 when the queue is full; the job is then failed, and the caller refunds its quota
+    public void submit(String jobId) {
+        if (!enqueue(jobId)) {
+            imageJobService.fail(jobId, "Too many image requests in progress.");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many image requests in progress, please retry shortly.");
+        }
+    }
+
+    // The job's current state, then its final state once it finishes
+    public Flux<ImageJobDto> watch(String jobId, Long userId) {
+        // Local completions are subscribed before the row is read, so a job finishing in between isn't missed
+        Flux<ImageJobDto> local = completions.asFlux().filter(job -> job.jobId().equals(jobId));
+        Mono<ImageJobDto> current = Mono.fromCallable(() -> imageJobService.getJob(jobId, userId));
+        Flux<ImageJobDto> polled = Flux.interval(pollInterval, Schedulers.boundedElastic())
+                .map(tick -> imageJobService.getJob(jobId, userId))
+                .filter(ImageJobDto::isFinished);
+        return Flux.merge(local, current, polled).takeUntil(ImageJobDto::isFinished);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void recoverOnStartup() {
+        recover();
+    }
+
+    @Scheduled(fixedDelayString = "${app.images.jobs.recovery-interval:PT1M}")
+    void recover() {
+        LocalDateTime now = LocalDateTime.now();
+        int resubmitted = 0;
+        for (String jobId : imageJobService.findRecoverable(now.minus(requeueAfter), now.minus(staleAfter))) {
+            if (queued.contains(jobId)) {
+                continue;
+            }
+            if (!enqueue(jobId)) {
+                // Full; the rest are picked up on a later pass
+                break;
+            }
+            resubmitted++;
+        }
+        if (resubmitted > 0) {
+            logger.info("Resubmitted {} unfinished image jobs", resubmitted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        // Queued jobs stay QUEUED in the table and running ones that outlast the wait are found
+        // stale; either way they are picked up again after the restart
+        executor.getQueue().clear();
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private boolean enqueue(String jobId) {
+        queued.add(jobId);
+        try {
+            executor.execute(() -> run(jobId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.remove(jobId);
+            return false;
+        }
+    }
+
+    private void run(String jobId) {
+        queued.remove(jobId);
+        Optional<ImageJob> claimed = imageJobService.claim(jobId);
+        if (claimed.isEmpty()) {
+            return;
+        }
+        ImageJob job = claimed.get();
+        List<String> imageUrls;
+        try {
+            ImageService imageService = imageServiceFactory.getImageService(job.getAiModel());
+            if (imageService == null) {
+                throw new IllegalStateException("Unknown image model: " + job.getAiModel());
+            }
+            imageUrls = imageService.generateImages(job.getPrompt(), job.getImageCount());
+        } catch (Exception e) {
+            logger.warn("Image job {} failed", jobId, e);
+            rateLimitingService.refundImages(job.getUserId(), job.getImageCount());
+            finish(job, imageJobService.fail(jobId, "Error generating image: " + e.getMessage()));
+            return;
+        }
+
+        // Quota was reserved for every requested image; variations that failed are given back. The
+        // generated ones are paid for, so they stay charged even if they can't be saved
+        rateLimitingService.refundImages(job.getUserId(), job.getImageCount() - imageUrls.size());
+        finish(job, saveCompleted(job, imageUrls));
+    }
+
+    // Retries the write a few times; if it never lands the URLs are logged, since generating again would be billed again
+    private ImageJobDto saveCompleted(ImageJob job, List<String> imageUrls) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return imageJobService.complete(job.getId(), imageUrls);
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_COMPLETE_ATTEMPTS) {
+                    logger.error("Image job {} generated {} but could not be saved", job.getId(), imageUrls, e);
+                    return failAfterGenerating(job);
+                }
+                logger.warn("Saving image job {} failed (attempt {}), retrying: {}", job.getId(), attempt, e.getMessage());
+                try {
+                    Thread.sleep(COMPLETE_RETRY_BACKOFF.multipliedBy(attempt).toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Image job {} generated {} but could not be saved", job.getId(), imageUrls, e);
+                    return failAfterGenerating(job);
+                }
+            }
+        }
+    }
+
+    // Marked failed so recovery doesn't generate (and bill) the images again
+    private ImageJobDto failAfterGenerating(ImageJob job) {
+        String error = "Images were generated but could not be saved";
+        try {
+            return imageJobService.fail(job.getId(), error);
+        } catch (RuntimeException e) {
+            logger.warn("Could not mark image job {} failed: {}", job.getId(), e.getMessage());
+            job.setStatus(ImageJob.Status.FAILED);
+            job.setError(error);
+            return ImageJobDto.fromEntity(job);
+        }
+    }
+
+    private void finish(ImageJob job, ImageJobDto result) {
+        meterRegistry.counter("image.jobs.completed", "model", job.getAiModel(), "status", result.status().name()).increment();
+        completions.emitNext(result, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+    }
+}
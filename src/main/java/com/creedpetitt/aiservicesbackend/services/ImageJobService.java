@@ -0,0 +1,101 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.dto.ImageJobDto;
+import com.creedpetitt.aiservicesbackend.models.AppUser;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import com.creedpetitt.aiservicesbackend.repositories.ImageJobRepository;
+import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Image job rows; the provider call itself runs in ImageJobExecutor, outside any transaction
+@Service
+@Transactional
+public class ImageJobService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final ImageJobRepository imageJobRepository;
+    private final UserRepository userRepository;
+    private final ConversationService conversationService;
+    private final MessageService messageService;
+
+    public ImageJobService(ImageJobRepository imageJobRepository, UserRepository userRepository,
+                           ConversationService conversationService, MessageService messageService) {
+        this.imageJobRepository = imageJobRepository;
+        this.userRepository = userRepository;
+        this.conversationService = conversationService;
+        this.messageService = messageService;
+    }
+
+    // An existing conversation is checked now, so a job never fails on it after the image is paid for
+    public ImageJobDto create(AppUser user, Long conversationId, String prompt, String aiModel, int imageCount) {
+        long targetConversation = conversationId == null ? 0L : conversationId;
+        if (targetConversation != 0 && conversationService.getConversation(targetConversation, user).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found");
+        }
+        ImageJob job = new ImageJob(UUID.randomUUID().toString(), user.getId(), targetConversation, prompt, aiModel, imageCount);
+        return ImageJobDto.fromEntity(imageJobRepository.save(job));
+    }
+
+    @Transactional(readOnly = true)
+    public ImageJobDto getJob(String jobId, Long userId) {
+        return imageJobRepository.findByIdAndUserId(jobId, userId)
+                .map(ImageJobDto::fromEntity)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Image job not found"));
+    }
+
+    // Empty if another worker (here or on another node) already has it
+    public Optional<ImageJob> claim(String jobId) {
+        if (imageJobRepository.claim(jobId, LocalDateTime.now()) == 0) {
+            return Optional.empty();
+        }
+        return imageJobRepository.findById(jobId);
+    }
+
+    // Conversation, the prompt, every image and the job's status are written together
+    public ImageJobDto complete(String jobId, List<String> imageUrls) {
+        ImageJob job = imageJobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalStateException("Image job " + jobId + " no longer exists"));
+        AppUser user = userRepository.getReferenceById(job.getUserId());
+        Conversation conversation = conversationService.getOrCreateConversation(
+                job.getConversationId(), user, "Image Generation", job.getAiModel());
+        messageService.recordImageGeneration(conversation, user, job.getPrompt(), imageUrls, job.getAiModel());
+
+        job.setConversationId(conversation.getId());
+        job.setImageUrls(imageUrls);
+        finish(job, ImageJob.Status.SUCCEEDED);
+        return ImageJobDto.fromEntity(job);
+    }
+
+    public ImageJobDto fail(String jobId, String error) {
+        ImageJob job = imageJobRepository.findById(jobId)
+                .orElseThrow(() -> new IllegalStateException("Image job " + jobId + " no longer exists"));
+        String message = error == null || error.isBlank() ? "Image generation failed" : error;
+        job.setError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        finish(job, ImageJob.Status.FAILED);
+        return ImageJobDto.fromEntity(job);
+    }
+
+    // Jobs to (re)submit; RUNNING ones not touched since runningBefore (earlier than queuedBefore) go back to QUEUED first
+    public List<String> findRecoverable(LocalDateTime queuedBefore, LocalDateTime runningBefore) {
+        imageJobRepository.requeueStaleRunning(runningBefore);
+        return imageJobRepository.findQueuedIdsBefore(queuedBefore);
+    }
+
+    private void finish(ImageJob job, ImageJob.Status status) {
+        LocalDateTime now = LocalDateTime.now();
+        job.setStatus(status);
+        job.setUpdatedAt(now);
+        job.setCompletedAt(now);
+        imageJobRepository.save(job);
+    }
+}
@@ -1,68 +1,306 @@
 package com.creedpetitt.aiservicesbackend.services;
 
+import com.creedpetitt.aiservicesbackend.dto.SignedUploadDto;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.HttpMethod;
 import com.google.cloud.storage.Storage;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Streams uploads into a resumable GCS write in {@code chunk-size} pieces, so an upload holds
+ * about two chunks of heap (ours and the channel's) however large the file is. The content
+ * type comes from the file's leading bytes, not from what the client declared.
+ *
+ * <p>Browsers can instead upload straight to the bucket: {@link #createSignedUpload} hands out
+ * a V4 signed PUT URL for a fresh object key, and {@link #finalizeSignedUpload} checks what
+ * landed there before its URL is used. The requesting user's id is signed into the upload as
+ * object metadata, so only they can finalize it. The streaming path remains the fallback.
+ *
+ * <p>Either way, an upload that passed its checks is marked as such on the object, and chat
+ * turns only accept image URLs that {@link #isCheckedUpload} confirms belong to the sender.
+ */
 @Service
 public class ImageUploadService {
 
-    private final Storage storage;
+    static final long MAX_FILE_SIZE = 10 * 1024 * 1024;
+
+    // GCS resumable uploads take chunks in multiples of 256 KiB
+    private static final int CHUNK_GRANULARITY = 256 * 1024;
+
+    // Longest magic number we sniff (RIFF....WEBP)
+    private static final int SNIFF_LENGTH = 12;
+
+    // Stored by GCS as the object's "uploaded-by" metadata
+    private static final String OWNER_HEADER = "x-goog-meta-uploaded-by";
+    private static final String OWNER_METADATA = "uploaded-by";
 
-    @Value("${spring.cloud.gcp.storage.bucket}")
-    private String bucketName;
+    // The object's generation once it has passed our checks. The uploader can't know it
+    // before the PUT, so it can't be set through a signed URL
+    private static final String CHECKED_METADATA = "checked-generation";
+
+    private static final Pattern UPLOAD_OBJECT_KEY =
+            Pattern.compile("uploads/[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}(\\.[a-z]+)");
+
+    private final Storage storage;
+    private final String bucketName;
+    private final int chunkSize;
+    private final Duration signedUrlTtl;
 
-    public ImageUploadService(Storage storage) {
+    public ImageUploadService(Storage storage,
+                              @Value("${spring.cloud.gcp.storage.bucket}") String bucketName,
+                              @Value("${app.uploads.chunk-size:256KB}") DataSize chunkSize,
+                              @Value("${app.uploads.signed-url-ttl:PT10M}") Duration signedUrlTtl) {
         this.storage = storage;
+        this.bucketName = bucketName;
+        this.chunkSize = (int) Math.max(CHUNK_GRANULARITY,
+                chunkSize.toBytes() / CHUNK_GRANULARITY * CHUNK_GRANULARITY);
+        this.signedUrlTtl = signedUrlTtl;
+    }
+
+    public SignedUploadDto createSignedUpload(String contentType, Long userId) {
+        UploadType type = UploadType.fromContentType(contentType);
+        if (type == null) {
+            throw new IllegalArgumentException("File must be an image (JPEG, PNG, WebP, GIF) or PDF");
+        }
+
+        String objectKey = "uploads/" + UUID.randomUUID() + type.extension;
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, objectKey))
+                .setContentType(type.contentType)
+                .build();
+        // Signed, so GCS rejects a PUT that goes over the size limit, overwrites the object or
+        // names another owner
+        Map<String, String> extHeaders = Map.of(
+                "x-goog-content-length-range", "0," + MAX_FILE_SIZE,
+                "x-goog-if-generation-match", "0",
+                OWNER_HEADER, String.valueOf(userId));
+
+        URL url = storage.signUrl(blobInfo, signedUrlTtl.toSeconds(), TimeUnit.SECONDS,
+                Storage.SignUrlOption.httpMethod(HttpMethod.PUT),
+                Storage.SignUrlOption.withContentType(),
+                Storage.SignUrlOption.withExtHeaders(extHeaders),
+                Storage.SignUrlOption.withV4Signature());
+
+        Map<String, String> headers = new HashMap<>(extHeaders);
+        headers.put("Content-Type", type.contentType);
+        return new SignedUploadDto(url.toString(), objectKey, headers, LocalDateTime.now().plus(signedUrlTtl));
+    }
+
+    // Checks an object uploaded through a signed URL from its metadata and first bytes; one
+    // that fails is deleted. Another user's upload is reported as not found and left alone
+    public String finalizeSignedUpload(String objectKey, Long userId) throws IOException {
+        Matcher matcher = objectKey == null ? null : UPLOAD_OBJECT_KEY.matcher(objectKey);
+        UploadType expected = matcher != null && matcher.matches() ? UploadType.fromExtension(matcher.group(1)) : null;
+        if (expected == null) {
+            throw new IllegalArgumentException("Invalid object key");
+        }
+
+        BlobId blobId = BlobId.of(bucketName, objectKey);
+        Blob blob = storage.get(blobId);
+        Map<String, String> metadata = blob == null ? null : blob.getMetadata();
+        if (metadata == null || !String.valueOf(userId).equals(metadata.get(OWNER_METADATA))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found");
+        }
+
+        String problem = null;
+        Long size = blob.getSize();
+        if (size == null || size == 0) {
+            problem = "File is empty";
+        } else if (size > MAX_FILE_SIZE) {
+            problem = "File size must be less than 10MB";
+        } else if (!expected.contentType.equals(blob.getContentType())) {
+            problem = "File type does not match the upload";
+        } else if (UploadType.sniff(readHeader(blobId), SNIFF_LENGTH) != expected) {
+            problem = "File contents do not match its type";
+        }
+        if (problem != null) {
+            storage.delete(blobId);
+            throw new IllegalArgumentException(problem);
+        }
+
+        markChecked(blobId, blob);
+        return publicUrl(objectKey);
+    }
+
+    // True only for a finalized or streamed upload of ours that the given user made
+    public boolean isCheckedUpload(String imageUrl, Long userId) {
+        String prefix = publicUrl("");
+        if (imageUrl == null || !imageUrl.startsWith(prefix)) {
+            return false;
+        }
+        String objectKey = imageUrl.substring(prefix.length());
+        if (!UPLOAD_OBJECT_KEY.matcher(objectKey).matches()) {
+            return false;
+        }
+
+        Blob blob = storage.get(BlobId.of(bucketName, objectKey));
+        Map<String, String> metadata = blob == null ? null : blob.getMetadata();
+        return metadata != null
+                && String.valueOf(userId).equals(metadata.get(OWNER_METADATA))
+                && String.valueOf(blob.getGeneration()).equals(metadata.get(CHECKED_METADATA));
     }
 
-    public String uploadUserImage(MultipartFile file) throws IOException {
+    public String uploadUserImage(MultipartFile file, Long userId) throws IOException {
         // Validate file
         if (file.isEmpty()) {
             throw new IllegalArgumentException("File is empty");
         }
 
-        String contentType = file.getContentType();
-        if (contentType == null) {
-            throw new IllegalArgumentException("File type cannot be determined");
+        // Validate file size (max 10MB)
+        if (file.getSize() > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("File size must be less than 10MB");
         }
 
-        // Support images and PDFs
-        boolean isImage = contentType.startsWith("image/");
-        boolean isPdf = contentType.equals("application/pdf");
-        
-        if (!isImage && !isPdf) {
-            throw new IllegalArgumentException("File must be an image (JPEG, PNG, WebP, GIF) or PDF");
+        try (InputStream in = file.getInputStream()) {
+            byte[] buffer = new byte[chunkSize];
+            int read = in.readNBytes(buffer, 0, buffer.length);
+
+            // Support images and PDFs
+            UploadType type = UploadType.sniff(buffer, read);
+            if (type == null) {
+                throw new IllegalArgumentException("File must be an image (JPEG, PNG, WebP, GIF) or PDF");
+            }
+
+            String filename = "uploads/" + UUID.randomUUID() + type.extension;
+            BlobId blobId = BlobId.of(bucketName, filename);
+            BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
+                    .setContentType(type.contentType)
+                    .setMetadata(Map.of(OWNER_METADATA, String.valueOf(userId)))
+                    .build();
+
+            // Not closed on failure: closing would finalize a partial object, while an
+            // abandoned resumable session just expires
+            WriteChannel writer = storage.writer(blobInfo);
+            writer.setChunkSize(chunkSize);
+            long total = 0;
+            while (read > 0) {
+                total += read;
+                if (total > MAX_FILE_SIZE) {
+                    throw new IllegalArgumentException("File size must be less than 10MB");
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    writer.write(chunk);
+                }
+                read = in.readNBytes(buffer, 0, buffer.length);
+            }
+            writer.close();
+
+            markChecked(blobId, storage.get(blobId));
+
+            // Return public URL
+            return publicUrl(filename);
         }
+    }
 
-        // Validate file size (max 10MB)
-        if (file.getSize() > 10 * 1024 * 1024) {
-            throw new IllegalArgumentException("File size must be less than 10MB");
+    // A metadata patch: the owner set at upload is kept
+    private void markChecked(BlobId blobId, Blob blob) {
+        storage.update(BlobInfo.newBuilder(blobId)
+                .setMetadata(Map.of(CHECKED_METADATA, String.valueOf(blob.getGeneration())))
+                .build());
+    }
+
+    private String publicUrl(String objectKey) {
+        return String.format("https://storage.googleapis.com/%s/%s", bucketName, objectKey);
+    }
+
+    private byte[] readHeader(BlobId blobId) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SNIFF_LENGTH);
+        try (ReadChannel reader = storage.reader(blobId)) {
+            reader.limit(SNIFF_LENGTH);
+            while (header.hasRemaining() && reader.read(header) >= 0) {
+                // Keep reading until the header is full or the object ends
+            }
         }
+        return header.array();
+    }
+
+    // Upload types we accept, recognized by their magic bytes
+    enum UploadType {
+        JPEG("image/jpeg", ".jpg"),
+        PNG("image/png", ".png"),
+        GIF("image/gif", ".gif"),
+        WEBP("image/webp", ".webp"),
+        PDF("application/pdf", ".pdf");
 
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        if (originalFilename != null && originalFilename.contains(".")) {
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+        final String contentType;
+        final String extension;
+
+        UploadType(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
         }
-        String filename = "uploads/" + UUID.randomUUID() + extension;
 
-        // Upload to GCS
-        BlobId blobId = BlobId.of(bucketName, filename);
-        BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
-                .setContentType(contentType)
-                .build();
+        static UploadType fromContentType(String contentType) {
+            for (UploadType type : values()) {
+                if (type.contentType.equals(contentType)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        static UploadType fromExtension(String extension) {
+            for (UploadType type : values()) {
+                if (type.extension.equals(extension)) {
+                    return type;
+                }
+            }
+            return null;
+        }
 
-        storage.create(blobInfo, file.getBytes());
+        // Null if the first length bytes of data don't start a supported file
+        static UploadType sniff(byte[] data, int length) {
+            if (startsWith(data, length, 0, new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF})) {
+                return JPEG;
+            }
+            if (startsWith(data, length, 0, PNG_SIGNATURE)) {
+                return PNG;
+            }
+            if (startsWith(data, length, 0, ascii("GIF87a")) || startsWith(data, length, 0, ascii("GIF89a"))) {
+                return GIF;
+            }
+            if (startsWith(data, length, 0, ascii("RIFF")) && startsWith(data, length, 8, ascii("WEBP"))) {
+                return WEBP;
+            }
+            if (startsWith(data, length, 0, ascii("%PDF-"))) {
+                return PDF;
+            }
+            return null;
+        }
 
-        // Return public URL
-        return String.format("https://storage.googleapis.com/%s/%s", bucketName, filename);
+        private static boolean startsWith(byte[] data, int length, int offset, byte[] prefix) {
+            return length >= offset + prefix.length
+                    && Arrays.equals(data, offset, offset + prefix.length, prefix, 0, prefix.length);
+        }
+
+        private static byte[] ascii(String value) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
     }
 }
@@ -1,12 +1,20 @@
 package com.creedpetitt.aiservicesbackend.services;
 
+import com.creedpetitt.aiservicesbackend.dto.MessageDto;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.models.Conversation;
 import com.creedpetitt.aiservicesbackend.models.Message;
 import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -15,10 +23,19 @@ public class MessageService {
 
     private final MessageRepository messageRepository;
     private final ConversationService conversationService;
-
-    public MessageService(MessageRepository messageRepository, ConversationService conversationService) {
+    private final ConversationContextCache contextCache;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public MessageService(MessageRepository messageRepository, ConversationService conversationService,
+                          ConversationContextCache contextCache,
+                          @Value("${app.conversations.messages.default-page-size:50}") int defaultPageSize,
+                          @Value("${app.conversations.messages.max-page-size:200}") int maxPageSize) {
         this.messageRepository = messageRepository;
         this.conversationService = conversationService;
+        this.contextCache = contextCache;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     public Message saveMessage(Message message) {
@@ -35,6 +52,7 @@ public class MessageService {
 
         Message message = new Message(conversation, user, content.trim(), Message.MessageType.USER);
         Message savedMessage = messageRepository.save(message);
+        contextCache.append(savedMessage);
 
         conversationService.updateConversationTimestamp(conversation);
         
@@ -48,6 +66,7 @@ public class MessageService {
 
         Message message = new Message(conversation, user, content.trim(), Message.MessageType.USER, imageUrl);
         Message savedMessage = messageRepository.save(message);
+        contextCache.append(savedMessage);
 
         conversationService.updateConversationTimestamp(conversation);
         
@@ -62,18 +81,95 @@ public class MessageService {
         Message message = new Message(conversation, user, content.trim(), Message.MessageType.ASSISTANT);
         message.setAiModel(aiModel);
         Message savedMessage = messageRepository.save(message);
+        contextCache.append(savedMessage);
 
         conversationService.updateConversationTimestamp(conversation);
 
         return savedMessage;
     }
 
+    // Empty placeholder row that a streamed reply is checkpointed into; see AssistantStreamPersister
+    public Message startAssistantMessage(Conversation conversation, AppUser user, String aiModel) {
+        if (conversation == null || user == null) {
+            throw new IllegalArgumentException("Conversation and user cannot be null");
+        }
+
+        Message message = new Message(conversation, user, "", Message.MessageType.ASSISTANT);
+        message.setAiModel(aiModel);
+        message.setStatus(Message.MessageStatus.STREAMING);
+        Message savedMessage = messageRepository.save(message);
+
+        conversationService.updateConversationTimestamp(conversation);
+
+        return savedMessage;
+    }
+
+    public void appendAssistantContent(Long messageId, String delta) {
+        if (delta != null && !delta.isEmpty()) {
+            messageRepository.appendContent(messageId, delta);
+        }
+    }
+
+    // Writes the last delta and final status; a reply that never produced any text is removed
+    public void finishAssistantMessage(Long messageId, String delta, Message.MessageStatus status, boolean hasContent) {
+        if (!hasContent) {
+            messageRepository.deleteById(messageId);
+            return;
+        }
+        messageRepository.findById(messageId).ifPresent(message -> {
+            if (delta != null && !delta.isEmpty()) {
+                message.setContent(message.getContent() + delta);
+            }
+            message.setStatus(status);
+            if (status == Message.MessageStatus.COMPLETE) {
+                contextCache.append(message);
+            }
+        });
+    }
+
+    public int interruptStaleStreams(LocalDateTime startedBefore) {
+        return messageRepository.markStaleStreaming(startedBefore);
+    }
+
+    /**
+     * One page of a conversation in chronological order. With no cursor this is the newest
+     * {@code limit} messages; {@code before}/{@code after} are message ids to page older or
+     * newer from. {@code hasMore} says whether further messages exist in that direction.
+     */
     @Transactional(readOnly = true)
-    public List<Message> getConversationMessages(Conversation conversation) {
+    public MessagePage getMessagePage(Conversation conversation, Long before, Long after, Integer limit) {
         if (conversation == null) {
             throw new IllegalArgumentException("Conversation cannot be null");
         }
-        return messageRepository.findByConversationOrderByCreatedAtAsc(conversation);
+        if (before != null && after != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either 'before' or 'after', not both.");
+        }
+        int size = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        // One extra row tells us whether another page exists without a count query
+        PageRequest page = PageRequest.of(0, size + 1);
+        Long conversationId = conversation.getId();
+
+        List<MessageDto> messages;
+        if (after != null) {
+            messages = messageRepository.findDtosAfter(conversationId, cursorCreatedAt(conversationId, after), after, page);
+        } else if (before != null) {
+            messages = messageRepository.findDtosBefore(conversationId, cursorCreatedAt(conversationId, before), before, page);
+        } else {
+            messages = messageRepository.findLatestDtos(conversationId, page);
+        }
+
+        boolean hasMore = messages.size() > size;
+        List<MessageDto> result = new ArrayList<>(hasMore ? messages.subList(0, size) : messages);
+        if (after == null) {
+            // Newest-first from the index; clients get oldest first
+            Collections.reverse(result);
+        }
+        return new MessagePage(result, hasMore);
+    }
+
+    private LocalDateTime cursorCreatedAt(Long conversationId, Long messageId) {
+        return messageRepository.findCreatedAtByIdAndConversationId(messageId, conversationId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown message cursor."));
     }
 
     @Transactional(readOnly = true)
@@ -86,15 +182,23 @@ public class MessageService {
 
     @Transactional
     public void recordImageGeneration(Conversation conversation, AppUser user, String prompt, String imageUrl, String aiModel) {
+        recordImageGeneration(conversation, user, prompt, List.of(imageUrl), aiModel);
+    }
+
+    // One prompt message and one image message per variation, in a single transaction
+    @Transactional
+    public void recordImageGeneration(Conversation conversation, AppUser user, String prompt, List<String> imageUrls, String aiModel) {
         Message userMessage = new Message(conversation, user, prompt, Message.MessageType.USER);
-        messageRepository.save(userMessage);
+        contextCache.append(messageRepository.save(userMessage));
 
-        Message imageMessage = new Message(conversation, user, "Generated Image", Message.MessageType.ASSISTANT, imageUrl);
-        imageMessage.setAiModel(aiModel);
-        messageRepository.save(imageMessage);
+        for (String imageUrl : imageUrls) {
+            Message imageMessage = new Message(conversation, user, "Generated Image", Message.MessageType.ASSISTANT, imageUrl);
+            imageMessage.setAiModel(aiModel);
+            contextCache.append(messageRepository.save(imageMessage));
+        }
 
         conversationService.updateConversationTimestamp(conversation);
     }
 
-
+    public record MessagePage(List<MessageDto> messages, boolean hasMore) {}
 }
\ No newline at end of file
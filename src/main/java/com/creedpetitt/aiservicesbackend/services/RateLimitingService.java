@@ -1,35 +1,75 @@
 package com.creedpetitt.aiservicesbackend.services;
 
-import com.creedpetitt.aiservicesbackend.models.AppUser;
+import com.creedpetitt.aiservicesbackend.ratelimit.RateLimit;
+import com.creedpetitt.aiservicesbackend.ratelimit.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RateLimitingService {
 
-    private final int MAX_AUTHENTICATED_REQUESTS = 50;
-    private final int MAX_IMAGES_PER_USER = 5;
+    public static final int MAX_AUTHENTICATED_REQUESTS = 50;
+    public static final int MAX_IMAGES_PER_USER = 5;
 
-    public boolean isUserAllowed(AppUser user) {
-        if (user == null) return false;
-        Integer messageCount = user.getMessageCount();
-        return (messageCount == null ? 0 : messageCount) < MAX_AUTHENTICATED_REQUESTS;
+    private final UserService userService;
+    private final RateLimiter burstLimiter;
+    private final RateLimit userLimit;
+    private final RateLimit modelLimit;
+
+    public RateLimitingService(UserService userService,
+                               RateLimiter burstLimiter,
+                               @Value("${app.rate-limit.user.per-second:2}") long userPerSecond,
+                               @Value("${app.rate-limit.user.per-minute:20}") long userPerMinute,
+                               @Value("${app.rate-limit.model.per-second:20}") long modelPerSecond,
+                               @Value("${app.rate-limit.model.per-minute:600}") long modelPerMinute) {
+        this.userService = userService;
+        this.burstLimiter = burstLimiter;
+        this.userLimit = new RateLimit(userPerSecond, userPerMinute);
+        this.modelLimit = new RateLimit(modelPerSecond, modelPerMinute);
+    }
+
+    // Per-second/per-minute limits per user and per model, checked by the configured RateLimiter backend
+    public boolean tryAcquire(Long userId, String model) {
+        if (userId == null || model == null) return false;
+        String userKey = "user:" + userId;
+        if (!burstLimiter.tryAcquire(userKey, userLimit)) {
+            return false;
+        }
+        if (!burstLimiter.tryAcquire("model:" + model, modelLimit)) {
+            burstLimiter.release(userKey);
+            return false;
+        }
+        return true;
+    }
+
+    // Checks and consumes one message of quota atomically
+    public boolean tryConsumeMessage(Long userId) {
+        if (userId == null) return false;
+        return userService.tryIncrementMessageCount(userId, MAX_AUTHENTICATED_REQUESTS);
+    }
+
+    public boolean tryConsumeImage(Long userId) {
+        return tryConsumeImages(userId, 1);
+    }
+
+    // Consumes count images of quota in one statement, or none if they don't all fit
+    public boolean tryConsumeImages(Long userId, int count) {
+        if (userId == null || count < 1) return false;
+        return userService.tryIncrementImageCount(userId, count, MAX_IMAGES_PER_USER);
     }
 
-    public int getRemainingRequests(AppUser user) {
-        if (user == null) return 0;
-        Integer messageCount = user.getMessageCount();
-        return Math.max(0, MAX_AUTHENTICATED_REQUESTS - (messageCount == null ? 0 : messageCount));
+    // Gives back an image consumed by a generation that failed
+    public void refundImage(Long userId) {
+        refundImages(userId, 1);
     }
 
-    public boolean isUserImageAllowed(AppUser user) {
-        if (user == null) return false;
-        Integer imageCount = user.getImageCount();
-        return (imageCount == null ? 0 : imageCount) < MAX_IMAGES_PER_USER;
+    public void refundImages(Long userId, int count) {
+        if (userId == null || count < 1) return;
+        userService.decrementImageCount(userId, count);
     }
 
-    public int getRemainingImages(AppUser user) {
-        if (user == null) return 0;
-        Integer imageCount = user.getImageCount();
-        return Math.max(0, MAX_IMAGES_PER_USER - (imageCount == null ? 0 : imageCount));
+    public int getRemainingImages(Long userId) {
+        if (userId == null) return 0;
+        return Math.max(0, MAX_IMAGES_PER_USER - userService.getCurrentImageCount(userId));
     }
 }
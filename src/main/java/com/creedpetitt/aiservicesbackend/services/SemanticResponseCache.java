@@ -0,0 +1,125 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.semanticcache.SemanticCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Near-duplicate lookup for context-free first turns, behind the exact-match
+ * {@link ChatResponseCache}: the prompt is embedded and the most similar cached prompt for the
+ * same model and system prompt answers if it scores at least {@code similarity-threshold}.
+ * Off unless {@code app.chat.semantic-cache.enabled=true}, which also needs an embedding model
+ * (see {@code SemanticCacheConfig}). With {@code snapshot-path} set, the
+ * cache is written to disk on shutdown and reloaded on startup.
+ */
+@Service
+public class SemanticResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticResponseCache.class);
+
+    private final SemanticCache semanticCache;
+    private final boolean enabled;
+    private final String snapshotPath;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer lookupTimer;
+
+    public SemanticResponseCache(ObjectProvider<SemanticCache> semanticCache,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.chat.semantic-cache.snapshot-path:}") String snapshotPath) {
+        // Only present when app.chat.semantic-cache.enabled=true
+        this.semanticCache = semanticCache.getIfAvailable();
+        this.enabled = this.semanticCache != null;
+        this.snapshotPath = snapshotPath;
+        this.hits = meterRegistry.counter("chat.semantic_cache.lookups", "result", "hit");
+        this.misses = meterRegistry.counter("chat.semantic_cache.lookups", "result", "miss");
+        this.lookupTimer = meterRegistry.timer("chat.semantic_cache.lookup");
+        if (enabled) {
+            meterRegistry.gauge("chat.semantic_cache.entries", this.semanticCache, SemanticCache::size);
+        }
+    }
+
+    public boolean isCacheable(ChatContext context, String imageUrl) {
+        return enabled && context.isEmpty() && (imageUrl == null || imageUrl.isBlank());
+    }
+
+    // Embedding the prompt is a call to the embedding model; if it fails the turn just goes to the provider
+    public Optional<String> get(ChatService chatService, String prompt) {
+        Optional<String> reply;
+        try {
+            reply = lookupTimer.record(() -> semanticCache.get(partition(chatService), prompt));
+        } catch (RuntimeException e) {
+            logger.warn("Semantic cache lookup failed: {}", e.getMessage());
+            reply = Optional.empty();
+        }
+        (reply.isPresent() ? hits : misses).increment();
+        return reply;
+    }
+
+    // Embedding and indexing happen off the stream's thread
+    @Async
+    public void put(ChatService chatService, String prompt, String reply) {
+        if (!enabled || reply == null || reply.isBlank()) {
+            return;
+        }
+        try {
+            semanticCache.put(partition(chatService), prompt, reply);
+        } catch (RuntimeException e) {
+            logger.warn("Adding to the semantic cache failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.semantic-cache.sweep-interval:PT5M}")
+    void evictExpired() {
+        if (enabled) {
+            semanticCache.evictExpired();
+        }
+    }
+
+    @PostConstruct
+    void loadSnapshot() {
+        if (!enabled || snapshotPath.isBlank()) {
+            return;
+        }
+        try {
+            logger.info("Restored {} semantic cache entries", semanticCache.load(Path.of(snapshotPath)));
+        } catch (IOException e) {
+            logger.warn("Could not load semantic cache snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void saveSnapshot() {
+        if (!enabled || snapshotPath.isBlank()) {
+            return;
+        }
+        try {
+            semanticCache.save(Path.of(snapshotPath));
+        } catch (IOException e) {
+            logger.warn("Could not save semantic cache snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private static String partition(ChatService chatService) {
+        return chatService.getModel() + ":" + DigestUtils.md5DigestAsHex(
+                chatService.getSystemPrompt(ChatContext.EMPTY).getBytes(StandardCharsets.UTF_8));
+    }
+}
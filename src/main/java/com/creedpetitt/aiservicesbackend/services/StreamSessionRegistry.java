@@ -0,0 +1,215 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps each streamed reply resumable. Events are numbered and held in a per-stream replay
+ * buffer of {@code buffer-events}, so a client that reconnects with {@code Last-Event-ID}
+ * ({@code <stream>:<sequence>}) gets what it missed and then follows the live generation, or
+ * the whole remainder of a finished one, without another provider call.
+ *
+ * <p>The provider call is owned by the session rather than the connection: once the last
+ * client detaches it keeps generating for {@code detached-grace} before it is cancelled.
+ * Finished streams are dropped {@code retain-after-completion} after they end.
+ */
+@Component
+public class StreamSessionRegistry {
+
+    public record StreamEvent(String streamId, long sequence, String data) {
+
+        public String id() {
+            return streamId + ":" + sequence;
+        }
+    }
+
+    private final Map<String, StreamSession> sessions = new ConcurrentHashMap<>();
+    private final int bufferEvents;
+    private final Duration detachedGrace;
+    private final Duration retainAfterCompletion;
+    private final MeterRegistry meterRegistry;
+    private final Scheduler timer;
+
+    public StreamSessionRegistry(@Value("${app.chat.stream.resume.buffer-events:1024}") int bufferEvents,
+                                 @Value("${app.chat.stream.resume.detached-grace:PT30S}") Duration detachedGrace,
+                                 @Value("${app.chat.stream.resume.retain-after-completion:PT2M}") Duration retainAfterCompletion,
+                                 MeterRegistry meterRegistry) {
+        this.bufferEvents = bufferEvents;
+        this.detachedGrace = detachedGrace;
+        this.retainAfterCompletion = retainAfterCompletion;
+        this.meterRegistry = meterRegistry;
+        this.timer = Schedulers.parallel();
+    }
+
+    // The provider stream is subscribed when the first client attaches
+    public Flux<StreamEvent> start(Long userId, Flux<String> chunks) {
+        StreamSession session = new StreamSession(UUID.randomUUID().toString(), userId, chunks);
+        sessions.put(session.streamId, session);
+        return session.attach(0);
+    }
+
+    // Throws ResponseStatusException when the stream can't be resumed; the client should then reload the conversation
+    public Flux<StreamEvent> resume(String lastEventId, Long userId) {
+        int separator = lastEventId.lastIndexOf(':');
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.substring(separator + 1).trim());
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID.");
+        }
+        if (separator <= 0 || lastSequence < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID.");
+        }
+
+        StreamSession session = sessions.get(lastEventId.substring(0, separator).trim());
+        if (session == null || !session.userId.equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Stream is no longer available.");
+        }
+        if (lastSequence + 1 < session.oldestRetained()) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Stream buffer no longer covers Last-Event-ID.");
+        }
+        meterRegistry.counter("chat.stream.resumed", "state", session.done ? "completed" : "live").increment();
+        return session.attach(lastSequence);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.stream.resume.sweep-interval:PT30S}")
+    void evictExpired() {
+        long now = System.nanoTime();
+        // Sessions never attached to are abandoned requests; their placeholder is swept as stale
+        long abandonedAfter = detachedGrace.plus(retainAfterCompletion).toNanos();
+        sessions.values().removeIf(session -> session.done
+                ? now - session.endedAt > retainAfterCompletion.toNanos()
+                : !session.connected && now - session.createdAt > abandonedAfter);
+    }
+
+    private final class StreamSession {
+
+        private final String streamId;
+        private final Long userId;
+        private final Flux<String> chunks;
+        private final long createdAt = System.nanoTime();
+        private final Sinks.Many<StreamEvent> events = Sinks.many().replay().limit(bufferEvents);
+        private final AtomicLong lastSequence = new AtomicLong();
+        private final Disposable.Swap upstream = Disposables.swap();
+        private final Disposable.Swap pendingCancel = Disposables.swap();
+        private int subscribers;
+        private volatile boolean connected;
+        private volatile boolean done;
+        private volatile long endedAt;
+
+        StreamSession(String streamId, Long userId, Flux<String> chunks) {
+            this.streamId = streamId;
+            this.userId = userId;
+            this.chunks = chunks;
+        }
+
+        long oldestRetained() {
+            return Math.max(1, lastSequence.get() - bufferEvents + 1);
+        }
+
+        Flux<StreamEvent> attach(long afterSequence) {
+            return Flux.defer(() -> {
+                        onAttach();
+                        // The provider is connected only once this subscriber is registered with the buffer
+                        return Flux.merge(events.asFlux(), Mono.<StreamEvent>fromRunnable(this::connect));
+                    })
+                    .filter(event -> event.sequence() > afterSequence)
+                    .doFinally(signal -> onDetach());
+        }
+
+        private synchronized void onAttach() {
+            subscribers++;
+            pendingCancel.update(null);
+        }
+
+        private void connect() {
+            synchronized (this) {
+                if (connected) {
+                    return;
+                }
+                connected = true;
+            }
+            upstream.update(chunks.subscribe(
+                    chunk -> emit(new StreamEvent(streamId, lastSequence.incrementAndGet(), chunk)),
+                    this::fail,
+                    this::complete));
+        }
+
+        private void onDetach() {
+            synchronized (this) {
+                if (--subscribers > 0 || done) {
+                    return;
+                }
+                if (detachedGrace.isZero() || detachedGrace.isNegative()) {
+                    cancel();
+                } else {
+                    pendingCancel.update(timer.schedule(this::cancelIfDetached, detachedGrace.toNanos(), TimeUnit.NANOSECONDS));
+                }
+            }
+        }
+
+        private void cancelIfDetached() {
+            synchronized (this) {
+                if (subscribers == 0 && !done) {
+                    cancel();
+                }
+            }
+        }
+
+        // Disposing the subscription cancels the provider call; the partial reply is kept as INTERRUPTED
+        private void cancel() {
+            upstream.dispose();
+            fail(new CancellationException("Stream was cancelled after the client disconnected."));
+        }
+
+        private void emit(StreamEvent event) {
+            events.emitNext(event, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        }
+
+        private void complete() {
+            if (end()) {
+                events.emitComplete(Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+            }
+        }
+
+        private void fail(Throwable error) {
+            if (end()) {
+                events.emitError(error, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+            }
+        }
+
+        // Only the first terminal signal (completion, provider error or cancellation) is published
+        private synchronized boolean end() {
+            if (done) {
+                return false;
+            }
+            endedAt = System.nanoTime();
+            done = true;
+            pendingCancel.dispose();
+            return true;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.creedpetitt.aiservicesbackend.services;
 import com.creedpetitt.aiservicesbackend.models.AppUser;
 import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class UserService {
@@ -32,21 +33,34 @@ public class UserService {
                 });
     }
 
-    public void incrementMessageCount(AppUser user) {
-        user.incrementMessageCount();
-        userRepository.save(user);
+    // Counters are updated in the database, never read-modify-write in Java, so concurrent requests can't lose updates
+    @Transactional
+    public boolean tryIncrementMessageCount(Long userId, int limit) {
+        return userRepository.incrementMessageCountIfBelow(userId, limit) == 1;
     }
 
-    public int getCurrentMessageCount(AppUser user) {
-        return user.getMessageCount();
+    @Transactional(readOnly = true)
+    public int getCurrentMessageCount(Long userId) {
+        return userRepository.findMessageCountById(userId).orElse(0);
     }
 
-    public void incrementImageCount(AppUser user) {
-        user.incrementImageCount();
-        userRepository.save(user);
+    @Transactional
+    public boolean tryIncrementImageCount(Long userId, int limit) {
+        return tryIncrementImageCount(userId, 1, limit);
     }
 
-    public int getCurrentImageCount(AppUser user) {
-        return user.getImageCount();
+    @Transactional
+    public boolean tryIncrementImageCount(Long userId, int count, int limit) {
+        return userRepository.incrementImageCountIfRoom(userId, count, limit) == 1;
     }
-}
\ No newline at end of file
+
+    @Transactional
+    public void decrementImageCount(Long userId, int count) {
+        userRepository.decrementImageCount(userId, count);
+    }
+
+    @Transactional(readOnly = true)
+    public int getCurrentImageCount(Long userId) {
+        return userRepository.findImageCountById(userId).orElse(0);
+    }
+}
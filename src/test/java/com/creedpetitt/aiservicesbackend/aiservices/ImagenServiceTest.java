@@ -0,0 +1,161 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.cloud.aiplatform.v1.PredictResponse;
+import com.google.cloud.aiplatform.v1.PredictionServiceClient;
+import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.Attributes;
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServerTransportFilter;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImagenServiceTest {
+
+    // Hand-written stand-in for Vertex AI's prediction service, served in-process
+    private static final MethodDescriptor<PredictRequest, PredictResponse> PREDICT =
+            MethodDescriptor.<PredictRequest, PredictResponse>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName("google.cloud.aiplatform.v1.PredictionService/Predict")
+                    .setRequestMarshaller(ProtoUtils.marshaller(PredictRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(PredictResponse.getDefaultInstance()))
+                    .build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<PredictRequest> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private Server server;
+    private PredictionServiceClient client;
+    private ImagenService imagenService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(ServerServiceDefinition.builder("google.cloud.aiplatform.v1.PredictionService")
+                        .addMethod(PREDICT, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                            requests.add(request);
+                            // One prediction per requested sample, like the real endpoint
+                            Value sampleCount = request.getParameters().getStructValue().getFieldsOrDefault("sampleCount", null);
+                            int samples = sampleCount == null ? 1 : (int) sampleCount.getNumberValue();
+                            PredictResponse.Builder response = PredictResponse.newBuilder();
+                            for (int i = 0; i < samples; i++) {
+                                String file = requests.size() + (i == 0 ? "" : "-" + i) + ".png";
+                                response.addPredictions(Value.newBuilder().setStructValue(Struct.newBuilder()
+                                        .putFields("gcsUri", Value.newBuilder().setStringValue("gs://bucket/images/" + file).build())));
+                            }
+                            responseObserver.onNext(response.build());
+                            responseObserver.onCompleted();
+                        }))
+                        .build())
+                .addTransportFilter(new ServerTransportFilter() {
+                    @Override
+                    public Attributes transportReady(Attributes transportAttrs) {
+                        connections.incrementAndGet();
+                        return transportAttrs;
+                    }
+                })
+                .build()
+                .start();
+
+        ManagedChannel channel = InProcessChannelBuilder.forName(name)
+                .directExecutor()
+                .intercept(new ChannelReadyTimer(meterRegistry.timer("imagen.channel.ready")))
+                .build();
+        client = PredictionServiceClient.create(PredictionServiceSettings.newBuilder()
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .setTransportChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+                .build());
+
+        @SuppressWarnings("unchecked")
+        ObjectProvider<PredictionServiceClient> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(client);
+        imagenService = new ImagenService(provider, meterRegistry, "project", "us-central1", "bucket");
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.shutdownNow();
+    }
+
+    @Test
+    void requestsShareOneClientAndConnection() throws Exception {
+        assertEquals("https://storage.googleapis.com/bucket/images/1.png", imagenService.generateImage("a red fox"));
+        assertEquals("https://storage.googleapis.com/bucket/images/2.png", imagenService.generateImage("a blue jay"));
+
+        assertEquals(2, requests.size());
+        assertEquals(1, connections.get());
+        assertFalse(client.isShutdown());
+        assertEquals(2, meterRegistry.timer("imagen.predict", "outcome", "success").count());
+        // Every call records its wait for a connected transport, not just the one that connected it
+        assertEquals(2, meterRegistry.timer("imagen.channel.ready").count());
+    }
+
+    @Test
+    void callerSeesItsOwnChannelWait() {
+        AtomicLong channelWait = new AtomicLong(-1);
+        Context previous = Context.current().withValue(ChannelReadyTimer.WAIT_NANOS, channelWait).attach();
+        try {
+            client.predict(PredictRequest.newBuilder().setEndpoint("endpoint").build());
+        } finally {
+            Context.current().detach(previous);
+        }
+
+        assertTrue(channelWait.get() >= 0);
+        assertEquals(1, meterRegistry.timer("imagen.channel.ready").count());
+    }
+
+    @Test
+    void requestNamesTheModelPromptAndOutputBucket() throws Exception {
+        imagenService.generateImage("a red fox");
+
+        PredictRequest request = requests.get(0);
+        assertEquals("projects/project/locations/us-central1/publishers/google/models/imagen-3.0-generate-001",
+                request.getEndpoint());
+        assertEquals("a red fox", request.getInstances(0).getStructValue().getFieldsOrThrow("prompt").getStringValue());
+        assertEquals("gs://bucket/images/",
+                request.getParameters().getStructValue().getFieldsOrThrow("storageUri").getStringValue());
+    }
+
+    @Test
+    void variationsComeFromOnePredictCall() throws Exception {
+        List<String> urls = imagenService.generateImages("a red fox", 3);
+
+        assertEquals(List.of(
+                "https://storage.googleapis.com/bucket/images/1.png",
+                "https://storage.googleapis.com/bucket/images/1-1.png",
+                "https://storage.googleapis.com/bucket/images/1-2.png"), urls);
+        assertEquals(1, requests.size());
+        assertEquals(3, (int) requests.get(0).getParameters().getStructValue()
+                .getFieldsOrThrow("sampleCount").getNumberValue());
+    }
+}
@@ -0,0 +1,35 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * A {@link ChatModel} for tests. Streaming subclasses supply the reply as text chunks through
+ * {@link #tokens}; blocking ones override {@link #call}. Whatever isn't overridden is unsupported.
+ */
+public abstract class StubChatModel implements ChatModel {
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return tokens(prompt).map(StubChatModel::response);
+    }
+
+    protected Flux<String> tokens(Prompt prompt) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,35 @@
+package com.creedpetitt.aiservicesbackend.aiservices;
+
+import org.springframework.ai.chat.model.ChatModel;
+
+/**
+ * A {@link ChatService} for tests: a fixed model name in front of the given {@link ChatModel},
+ * or in front of nothing when the test never reaches a provider.
+ */
+public class StubChatService extends ChatService {
+
+    private final String model;
+    private final ChatModel chatModel;
+
+    public StubChatService(String model) {
+        this(model, null);
+    }
+
+    public StubChatService(String model, ChatModel chatModel) {
+        this.model = model;
+        this.chatModel = chatModel;
+    }
+
+    @Override
+    protected ChatModel getChatModel() {
+        if (chatModel == null) {
+            throw new UnsupportedOperationException("No chat model behind " + model);
+        }
+        return chatModel;
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,168 @@
+package com.creedpetitt.aiservicesbackend.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares how many blocking image generations and SSE streams one node keeps in flight under
+ * the platform-thread and virtual-thread execution modes. Providers are simulated with fixed
+ * latencies, so only the servlet container and executors are measured. Run with
+ * {@code mvn test -Pload-test}.
+ */
+@Tag("load")
+class ExecutionModeLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeLoadTest.class);
+
+    private static final int CLIENTS = 1_000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final Duration IMAGE_LATENCY = Duration.ofSeconds(2);
+    private static final int STREAM_CHUNKS = 20;
+    private static final Duration CHUNK_INTERVAL = Duration.ofMillis(100);
+
+    @Test
+    void virtualThreadsKeepMoreBlockingWorkInFlight() throws Exception {
+        Result platform = run(false);
+        logger.info("platform: {} peak image generations, {} peak streams", platform.peakImages(), platform.peakStreams());
+        // Blocking generations are capped by the Tomcat pool; SSE streams are not
+        assertTrue(platform.peakImages() <= TOMCAT_MAX_THREADS,
+                "platform threads ran " + platform.peakImages() + " generations at once");
+
+        Result virtual = run(true);
+        logger.info("virtual: {} peak image generations, {} peak streams", virtual.peakImages(), virtual.peakStreams());
+        assertTrue(virtual.peakImages() > TOMCAT_MAX_THREADS,
+                "virtual threads only ran " + virtual.peakImages() + " generations at once");
+        assertTrue(virtual.peakStreams() >= platform.peakStreams(),
+                "virtual threads held " + virtual.peakStreams() + " streams, platform " + platform.peakStreams());
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        LoadController.reset();
+        try (var context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .properties("server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_MAX_THREADS,
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.main.banner-mode=off")
+                .run()) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+            fire(client, URI.create("http://localhost:" + port + "/load/image"));
+            fire(client, URI.create("http://localhost:" + port + "/load/stream"));
+
+            return new Result(LoadController.peakImages.get(), LoadController.peakStreams.get());
+        }
+    }
+
+    private static void fire(HttpClient client, URI uri) {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(2)).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.join().statusCode());
+        }
+    }
+
+    private record Result(int peakImages, int peakStreams) {}
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class,
+            JacksonAutoConfiguration.class,
+            TaskExecutionAutoConfiguration.class
+    })
+    @Import({ExecutionConfig.class, LoadController.class})
+    static class LoadTestApplication {
+    }
+
+    // Stand-ins for ImageController (blocking provider call) and the chat SSE endpoint
+    @RestController
+    static class LoadController {
+
+        static final AtomicInteger images = new AtomicInteger();
+        static final AtomicInteger peakImages = new AtomicInteger();
+        static final AtomicInteger streams = new AtomicInteger();
+        static final AtomicInteger peakStreams = new AtomicInteger();
+
+        private final Scheduler streamScheduler;
+
+        LoadController(Scheduler streamScheduler) {
+            this.streamScheduler = streamScheduler;
+        }
+
+        static void reset() {
+            images.set(0);
+            peakImages.set(0);
+            streams.set(0);
+            peakStreams.set(0);
+        }
+
+        @GetMapping("/load/image")
+        String image() throws InterruptedException {
+            peakImages.accumulateAndGet(images.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(IMAGE_LATENCY.toMillis());
+                return "ok";
+            } finally {
+                images.decrementAndGet();
+            }
+        }
+
+        @GetMapping("/load/stream")
+        SseEmitter stream() {
+            SseEmitter emitter = new SseEmitter(60_000L);
+            peakStreams.accumulateAndGet(streams.incrementAndGet(), Math::max);
+            Flux.interval(CHUNK_INTERVAL)
+                    .take(STREAM_CHUNKS)
+                    .publishOn(streamScheduler)
+                    .doFinally(signal -> streams.decrementAndGet())
+                    .subscribe(
+                            chunk -> {
+                                try {
+                                    emitter.send(SseEmitter.event().data("chunk " + chunk));
+                                } catch (Exception e) {
+                                    emitter.completeWithError(e);
+                                }
+                            },
+                            emitter::completeWithError,
+                            emitter::complete);
+            return emitter;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.creedpetitt.aiservicesbackend.controllers;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatModel;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatService;
+import com.creedpetitt.aiservicesbackend.dto.StreamMessageRequestDto;
+import com.creedpetitt.aiservicesbackend.models.AppUser;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.services.AssistantStreamPersister;
+import com.creedpetitt.aiservicesbackend.services.ChatContextBuilder;
+import com.creedpetitt.aiservicesbackend.services.ChatResponseCache;
+import com.creedpetitt.aiservicesbackend.services.ChatRouter;
+import com.creedpetitt.aiservicesbackend.services.ChatStreamService;
+import com.creedpetitt.aiservicesbackend.services.ChunkCoalescer;
+import com.creedpetitt.aiservicesbackend.services.ConversationService;
+import com.creedpetitt.aiservicesbackend.services.ConversationSummarizer;
+import com.creedpetitt.aiservicesbackend.services.GenerationSingleFlight;
+import com.creedpetitt.aiservicesbackend.services.ImageUploadService;
+import com.creedpetitt.aiservicesbackend.services.MessageService;
+import com.creedpetitt.aiservicesbackend.services.RateLimitingService;
+import com.creedpetitt.aiservicesbackend.services.SemanticResponseCache;
+import com.creedpetitt.aiservicesbackend.services.StreamSessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ChatControllerStreamTest {
+
+    private static final Duration CHUNK_INTERVAL = Duration.ofMillis(50);
+
+    private SlowChatModel chatModel;
+    private MessageService messageService;
+    private AssistantStreamPersister persister;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatStreamService chatStreamService;
+    private StreamSessionRegistry streamSessions;
+    private ChatController controller;
+
+    @BeforeEach
+    void setUp() {
+        chatModel = new SlowChatModel();
+        messageService = mock(MessageService.class);
+        ConversationService conversationService = mock(ConversationService.class);
+        RateLimitingService rateLimitingService = mock(RateLimitingService.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        Conversation conversation = new Conversation();
+        conversation.setId(1L);
+        Message placeholder = new Message();
+        placeholder.setId(2L);
+        when(conversationService.getOrCreateConversation(eq(0L), any(), anyString(), eq("slow"))).thenReturn(conversation);
+        when(messageService.startAssistantMessage(any(), any(), eq("slow"))).thenReturn(placeholder);
+        when(rateLimitingService.tryAcquire(anyLong(), anyString())).thenReturn(true);
+        when(rateLimitingService.tryConsumeMessage(anyLong())).thenReturn(true);
+
+        persister = new AssistantStreamPersister(messageService, mock(ConversationSummarizer.class),
+                1, 10, 32, Duration.ofSeconds(1), Duration.ofMinutes(10));
+        ChatServiceFactory chatServiceFactory = new ChatServiceFactory(List.of(new StubChatService("slow", chatModel)));
+        MockEnvironment environment = new MockEnvironment();
+        ChatRouter chatRouter = new ChatRouter(chatServiceFactory, environment, Duration.ofSeconds(15), false,
+                Duration.ofSeconds(3), Duration.ofMillis(500), 3, Duration.ofSeconds(30), meterRegistry);
+        // Coalescing off, so every chunk is exactly one SSE event regardless of timer jitter
+        chatStreamService = new ChatStreamService(conversationService, messageService,
+                chatServiceFactory, rateLimitingService,
+                mock(ChatContextBuilder.class), persister, new ChunkCoalescer(0, Duration.ZERO),
+                new ChatResponseCache(meterRegistry, false, DataSize.ofMegabytes(1), Duration.ofHours(1), 64),
+                mock(SemanticResponseCache.class), new GenerationSingleFlight(chatRouter, environment, false, meterRegistry),
+                mock(ImageUploadService.class), meterRegistry);
+        // No detached grace, so a disconnect cancels generation right away
+        streamSessions = new StreamSessionRegistry(64, Duration.ZERO, Duration.ofMinutes(2), meterRegistry);
+        controller = new ChatController(conversationService, messageService, null, null,
+                chatStreamService, null, streamSessions, null);
+    }
+
+    @Test
+    void disconnectStopsGenerationWithinOneChunk() throws Exception {
+        DisconnectingEmitter emitter = new DisconnectingEmitter(3);
+
+        controller.pipe(streamSessions.start(9L, chatStreamService.startStream(0L, 9L, new AppUser(), new StreamMessageRequestDto("hi", null, "slow"))), emitter);
+
+        assertTrue(emitter.disconnected.await(5, TimeUnit.SECONDS));
+        int generatedAtDisconnect = chatModel.generated.get();
+        // Several more chunk intervals: an uncancelled provider would keep generating
+        Thread.sleep(CHUNK_INTERVAL.multipliedBy(6).toMillis());
+
+        assertTrue(chatModel.cancelled.await(1, TimeUnit.SECONDS));
+        assertTrue(chatModel.generated.get() <= generatedAtDisconnect + 1,
+                "generated " + chatModel.generated.get() + " chunks after disconnecting at " + generatedAtDisconnect);
+        assertEquals(1.0, meterRegistry.counter("chat.stream.aborted", "model", "slow").count());
+        // The partial reply is kept, marked interrupted
+        verify(messageService, timeout(1000)).finishAssistantMessage(eq(2L), any(), eq(Message.MessageStatus.INTERRUPTED), eq(true));
+    }
+
+    @Test
+    void imageThatIsNotTheUsersCheckedUploadIsRejectedBeforeTheTurnStarts() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> chatStreamService.startStream(
+                0L, 9L, new AppUser(), new StreamMessageRequestDto("hi", "https://example.com/cat.png", "slow")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        verifyNoInteractions(messageService);
+        assertEquals(0, chatModel.generated.get());
+    }
+
+    @Test
+    void completedStreamIsNotCountedAsAborted() throws Exception {
+        chatModel.limit = 3;
+        DisconnectingEmitter emitter = new DisconnectingEmitter(Integer.MAX_VALUE);
+
+        controller.pipe(streamSessions.start(9L, chatStreamService.startStream(0L, 9L, new AppUser(), new StreamMessageRequestDto("hi", null, "slow"))), emitter);
+
+        verify(messageService, timeout(2000)).finishAssistantMessage(eq(2L), any(), eq(Message.MessageStatus.COMPLETE), eq(true));
+        assertEquals(3, emitter.sent.get());
+        assertEquals(0.0, meterRegistry.counter("chat.stream.aborted", "model", "slow").count());
+    }
+
+    // Emits one chunk per interval until cancelled (or until limit), counting what it generated
+    private static final class SlowChatModel extends StubChatModel {
+
+        final AtomicInteger generated = new AtomicInteger();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        volatile long limit = Long.MAX_VALUE;
+
+        @Override
+        protected Flux<String> tokens(Prompt prompt) {
+            return Flux.interval(CHUNK_INTERVAL)
+                    .take(limit)
+                    .map(i -> {
+                        generated.incrementAndGet();
+                        return "token" + i + " ";
+                    })
+                    .doOnCancel(cancelled::countDown);
+        }
+    }
+
+    // Stands in for a browser that closes the tab: sends fail once the limit is reached
+    private static final class DisconnectingEmitter extends SseEmitter {
+
+        final AtomicInteger sent = new AtomicInteger();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        private final int sendsBeforeDisconnect;
+
+        DisconnectingEmitter(int sendsBeforeDisconnect) {
+            this.sendsBeforeDisconnect = sendsBeforeDisconnect;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (sent.get() >= sendsBeforeDisconnect) {
+                disconnected.countDown();
+                throw new IOException("Broken pipe");
+            }
+            sent.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.creedpetitt.aiservicesbackend.controllers;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ImageService;
+import com.creedpetitt.aiservicesbackend.aiservices.ImageServiceFactory;
+import com.creedpetitt.aiservicesbackend.dto.ImageGenerationResponseDto;
+import com.creedpetitt.aiservicesbackend.dto.ImageJobDto;
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import com.creedpetitt.aiservicesbackend.security.UserPrincipal;
+import com.creedpetitt.aiservicesbackend.services.ImageJobExecutor;
+import com.creedpetitt.aiservicesbackend.services.ImageJobService;
+import com.creedpetitt.aiservicesbackend.services.MessageService;
+import com.creedpetitt.aiservicesbackend.services.RateLimitingService;
+import com.creedpetitt.aiservicesbackend.services.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImageControllerTest {
+
+    private final Authentication authentication = new TestingAuthenticationToken(new UserPrincipal(1L, "uid"), null);
+    private ImageJobExecutor imageJobExecutor;
+    private ImageController controller;
+
+    @BeforeEach
+    void setUp() {
+        ImageServiceFactory imageServiceFactory = mock(ImageServiceFactory.class);
+        when(imageServiceFactory.getImageService("imagen")).thenReturn(mock(ImageService.class));
+        RateLimitingService rateLimitingService = mock(RateLimitingService.class);
+        when(rateLimitingService.tryAcquire(anyLong(), anyString())).thenReturn(true);
+        when(rateLimitingService.tryConsumeImages(anyLong(), anyInt())).thenReturn(true);
+        ImageJobService imageJobService = mock(ImageJobService.class);
+        when(imageJobService.create(any(), eq(0L), eq("a red fox"), eq("imagen"), eq(1))).thenReturn(job(ImageJob.Status.QUEUED));
+        imageJobExecutor = mock(ImageJobExecutor.class);
+
+        controller = new ImageController(imageServiceFactory, rateLimitingService, mock(UserService.class),
+                mock(UserRepository.class), mock(MessageService.class), imageJobService, imageJobExecutor,
+                Duration.ofMillis(200));
+    }
+
+    @Test
+    void jobStillRunningAfterTheWaitIsAGatewayTimeout() {
+        when(imageJobExecutor.watch("job-1", 1L)).thenReturn(Flux.just(job(ImageJob.Status.RUNNING)).concatWith(Flux.never()));
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> controller.generateImage(Map.of("prompt", "a red fox"), authentication));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, error.getStatusCode());
+    }
+
+    @Test
+    void finishedJobIsReturned() {
+        when(imageJobExecutor.watch("job-1", 1L)).thenReturn(Flux.just(job(ImageJob.Status.QUEUED), job(ImageJob.Status.SUCCEEDED)));
+
+        ImageGenerationResponseDto response = controller.generateImage(Map.of("prompt", "a red fox"), authentication).getBody();
+
+        assertEquals("https://storage.googleapis.com/bucket/images/1.png", response.imageUrl());
+    }
+
+    private static ImageJobDto job(ImageJob.Status status) {
+        List<String> imageUrls = status == ImageJob.Status.SUCCEEDED
+                ? List.of("https://storage.googleapis.com/bucket/images/1.png")
+                : List.of();
+        return new ImageJobDto("job-1", status, "a red fox", "imagen", 1, imageUrls, 0L, null,
+                LocalDateTime.now(), status.isFinished() ? LocalDateTime.now() : null);
+    }
+}
@@ -0,0 +1,177 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DistributedRateLimiterTest {
+
+    private static final RateLimit LIMIT = new RateLimit(100, 1_000);
+
+    private MutableClock clock;
+    private InMemoryRateLimitStore store;
+    private AtomicInteger remoteCalls;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        store = new InMemoryRateLimitStore(clock);
+        remoteCalls = new AtomicInteger();
+    }
+
+    @Test
+    void limitHoldsAcrossNodesSharingTheStore() {
+        RateLimiter nodeA = node(countingStore());
+        RateLimiter nodeB = node(countingStore());
+
+        int granted = 0;
+        for (int i = 0; i < 80; i++) {
+            if (nodeA.tryAcquire("user:1", LIMIT)) granted++;
+            if (nodeB.tryAcquire("user:1", LIMIT)) granted++;
+        }
+
+        assertEquals(LIMIT.perSecond(), granted);
+    }
+
+    @Test
+    void leasesBatchRemoteCalls() {
+        RateLimiter node = node(countingStore());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(node.tryAcquire("model:openai", LIMIT));
+        }
+
+        // 100 requests, leases of 10 tokens for both the second and the minute window
+        assertEquals(20, remoteCalls.get());
+    }
+
+    @Test
+    void smallLimitsLeaseSingleTokensAndStayExactAcrossNodes() {
+        // The default per-user limits
+        RateLimit perUser = new RateLimit(2, 20);
+        RateLimiter nodeA = node(countingStore());
+        RateLimiter nodeB = node(countingStore());
+
+        // One request on each node uses the user's whole second; a bigger lease on A would refuse B's
+        assertTrue(nodeA.tryAcquire("user:1", perUser));
+        assertTrue(nodeB.tryAcquire("user:1", perUser));
+        assertFalse(nodeA.tryAcquire("user:1", perUser));
+        assertFalse(nodeB.tryAcquire("user:1", perUser));
+
+        // Second window: one token per call; minute window (limit 20): a 2-token lease per node
+        assertEquals(4 + 2, remoteCalls.get());
+    }
+
+    @Test
+    void nextWindowRefills() {
+        RateLimiter node = node(countingStore());
+        for (int i = 0; i < LIMIT.perSecond(); i++) {
+            node.tryAcquire("user:1", LIMIT);
+        }
+        assertFalse(node.tryAcquire("user:1", LIMIT));
+
+        clock.advance(Duration.ofSeconds(1));
+
+        assertTrue(node.tryAcquire("user:1", LIMIT));
+    }
+
+    @Test
+    void releasedTokenIsReusedWithoutRemoteCall() {
+        RateLimiter node = node(countingStore());
+        assertTrue(node.tryAcquire("user:1", LIMIT));
+        int callsAfterFirst = remoteCalls.get();
+
+        node.release("user:1");
+        assertTrue(node.tryAcquire("user:1", LIMIT));
+
+        assertEquals(callsAfterFirst, remoteCalls.get());
+    }
+
+    @Test
+    void fallsBackToLocalLimitsWhenStoreIsDown() {
+        RateLimitStore broken = (key, delta, ttl) -> {
+            throw new IllegalStateException("store unavailable");
+        };
+        RateLimiter node = node(broken);
+        // Minute cap equal to the second cap keeps the local buckets' real-time refill negligible
+        RateLimit limit = new RateLimit(100, 100);
+
+        int granted = 0;
+        for (int i = 0; i < 150; i++) {
+            if (node.tryAcquire("user:1", limit)) granted++;
+        }
+
+        assertEquals(limit.perMinute(), granted);
+    }
+
+    @Test
+    void storeFailingMidRequestFallsBackForTheWholeRequest() {
+        RateLimitStore minuteDown = (key, delta, ttl) -> {
+            if (key.contains(":m:")) {
+                throw new IllegalStateException("store unavailable");
+            }
+            remoteCalls.incrementAndGet();
+            return store.addAndGet(key, delta, ttl);
+        };
+        RateLimiter node = node(minuteDown);
+        RateLimit limit = new RateLimit(100, 100);
+
+        int granted = 0;
+        for (int i = 0; i < 150; i++) {
+            if (node.tryAcquire("user:1", limit)) granted++;
+        }
+
+        assertEquals(limit.perMinute(), granted);
+        // The second-window token taken from the store goes back each time instead of being spent
+        assertEquals(1, remoteCalls.get());
+    }
+
+    private RateLimiter node(RateLimitStore nodeStore) {
+        return new DistributedRateLimiter(nodeStore, new LocalRateLimiter(1_000, Duration.ofMinutes(5)),
+                clock, 10, 1_000);
+    }
+
+    private RateLimitStore countingStore() {
+        return (key, delta, ttl) -> {
+            remoteCalls.incrementAndGet();
+            return store.addAndGet(key, delta, ttl);
+        };
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.creedpetitt.aiservicesbackend.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tryAcquire throughput with 64 threads. "hot" has every thread hammering one key (worst-case
+ * CAS contention, e.g. a single model bucket); "spread" distributes threads over many user keys.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.creedpetitt.aiservicesbackend.ratelimit.LocalRateLimiterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class LocalRateLimiterBenchmark {
+
+    // Limits high enough that buckets stay mostly full, so the benchmark measures the CAS path
+    private static final RateLimit LIMIT = new RateLimit(1_000_000_000L, 60_000_000_000L);
+
+    @Param({"1", "10000"})
+    public int keyCount;
+
+    private LocalRateLimiter limiter;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        limiter = new LocalRateLimiter(100_000, Duration.ofMinutes(5));
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "user:" + i;
+        }
+    }
+
+    @Benchmark
+    public boolean tryAcquire() {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return limiter.tryAcquire(key, LIMIT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LocalRateLimiterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local, deterministic embeddings by feature hashing: lower-cased words, word bigrams and
+ * character trigrams are hashed into a fixed number of signed buckets. It captures lexical
+ * overlap (rephrasings, typos, punctuation) rather than meaning, needs no model or network, and
+ * gives the same vector for the same text on every JVM. Tests and benchmarks only; the app
+ * embeds with {@link ModelEmbeddingProvider}.
+ */
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float BIGRAM_WEIGHT = 0.7f;
+    private static final float TRIGRAM_WEIGHT = 0.4f;
+
+    private final int dimensions;
+
+    public HashingEmbeddingProvider(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        List<String> words = words(text);
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            add(vector, "w:" + word, WORD_WEIGHT);
+            if (i > 0) {
+                add(vector, "b:" + words.get(i - 1) + ' ' + word, BIGRAM_WEIGHT);
+            }
+            String padded = '^' + word + '$';
+            for (int j = 0; j + 3 <= padded.length(); j++) {
+                add(vector, "t:" + padded.substring(j, j + 3), TRIGRAM_WEIGHT);
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        String lower = text == null ? "" : text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); ) {
+            int codePoint = lower.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        // String.hashCode is specified, so buckets are stable across JVMs; the mix spreads nearby codes
+        int h = feature.hashCode() * 0x9E3779B9;
+        h ^= h >>> 15;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        int bucket = Math.floorMod(h, dimensions);
+        vector[bucket] += (h & 0x40000000) == 0 ? weight : -weight;
+    }
+
+    private static void normalize(float[] vector) {
+        double sumOfSquares = 0;
+        for (float value : vector) {
+            sumOfSquares += value * value;
+        }
+        if (sumOfSquares == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(sumOfSquares));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void nearestNeighbourMatchesBruteForceForAlmostAllQueries() {
+        Random random = new Random(7);
+        float[][] vectors = new float[5_000][];
+        HnswIndex index = new HnswIndex(DIMENSIONS, vectors.length, 16, 100, 1);
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomUnitVector(random);
+            assertEquals(i, index.add(vectors[i]));
+        }
+
+        int queries = 200;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomUnitVector(random);
+            int expected = bruteForceNearest(vectors, query);
+            if (index.search(query, 1, 64).get(0).id() == expected) {
+                found++;
+            }
+        }
+        assertTrue(found >= queries * 0.95, "recall@1 " + found + "/" + queries);
+    }
+
+    @Test
+    void deletedEntriesAreNeverReturned() {
+        Random random = new Random(11);
+        HnswIndex index = new HnswIndex(DIMENSIONS, 100, 8, 50, 1);
+        float[] target = randomUnitVector(random);
+        int targetId = index.add(target);
+        for (int i = 0; i < 50; i++) {
+            index.add(randomUnitVector(random));
+        }
+
+        assertEquals(targetId, index.search(target, 1, 32).get(0).id());
+        assertEquals(1.0f, index.search(target, 1, 32).get(0).similarity(), 1e-5);
+
+        index.markDeleted(targetId);
+        List<HnswIndex.Match> matches = index.search(target, 50, 64);
+        assertEquals(50, matches.size());
+        assertFalse(matches.stream().anyMatch(match -> match.id() == targetId));
+        assertEquals(50, index.liveCount());
+    }
+
+    @Test
+    void capacityIsFixed() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 2, 4, 10, 1);
+        Random random = new Random(3);
+        index.add(randomUnitVector(random));
+        index.add(randomUnitVector(random));
+
+        assertTrue(index.isFull());
+        assertThrows(IllegalStateException.class, () -> index.add(randomUnitVector(random)));
+    }
+
+    private static int bruteForceNearest(float[][] vectors, float[] query) {
+        int best = -1;
+        float bestDot = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < vectors.length; i++) {
+            float dot = 0;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                dot += vectors[i][d] * query[d];
+            }
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) random.nextGaussian();
+            norm += vector[d] * vector[d];
+        }
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,116 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of one semantic cache partition holding {@code entries} prompts, 4 threads.
+ * Prompts are clustered like real traffic: each is a canonical 8-15 word prompt (one per 20
+ * entries, words from a 5,000-word vocabulary) with one or two words replaced, inserted or
+ * dropped; queries are fresh variants of the same kind. "lookup" is what a chat turn pays
+ * (embedding plus HNSW search under the partition's read lock); "embed" is the embedding alone,
+ * so the difference is the search. Building the 1M partition takes a few minutes.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.creedpetitt.aiservicesbackend.semanticcache.SemanticCacheBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class SemanticCacheBenchmark {
+
+    private static final int VOCABULARY = 5_000;
+    private static final int VARIANTS_PER_PROMPT = 20;
+    private static final int QUERIES = 4_096;
+
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    @Param({"64"})
+    public int efSearch;
+
+    private HashingEmbeddingProvider embeddings;
+    private SemanticCache cache;
+    private String[] queries;
+
+    @Setup
+    public void setUp() {
+        embeddings = new HashingEmbeddingProvider(256);
+        cache = new SemanticCache(embeddings,
+                new SemanticCache.Settings(entries, Duration.ofDays(1), 0.9f, 16, 100, efSearch), Clock.systemUTC());
+
+        SplittableRandom random = new SplittableRandom(42);
+        String[][] canonical = new String[Math.max(1, entries / VARIANTS_PER_PROMPT)][];
+        for (int i = 0; i < canonical.length; i++) {
+            canonical[i] = new String[8 + random.nextInt(8)];
+            for (int j = 0; j < canonical[i].length; j++) {
+                canonical[i][j] = word(random);
+            }
+        }
+        for (int i = 0; i < entries; i++) {
+            cache.put("bench", variant(canonical[random.nextInt(canonical.length)], random), "reply " + i);
+        }
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = variant(canonical[random.nextInt(canonical.length)], random);
+        }
+    }
+
+    @Benchmark
+    public Object lookup() {
+        return cache.get("bench", queries[ThreadLocalRandom.current().nextInt(QUERIES)]);
+    }
+
+    @Benchmark
+    public Object embed() {
+        return embeddings.embed(queries[ThreadLocalRandom.current().nextInt(QUERIES)]);
+    }
+
+    private static String variant(String[] prompt, SplittableRandom random) {
+        List<String> words = new ArrayList<>(Arrays.asList(prompt));
+        int edits = 1 + random.nextInt(2);
+        for (int e = 0; e < edits; e++) {
+            switch (random.nextInt(3)) {
+                case 0 -> words.set(random.nextInt(words.size()), word(random));
+                case 1 -> words.add(random.nextInt(words.size() + 1), word(random));
+                default -> words.remove(random.nextInt(words.size()));
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    private static String word(SplittableRandom random) {
+        return "w" + random.nextInt(VOCABULARY);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SemanticCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
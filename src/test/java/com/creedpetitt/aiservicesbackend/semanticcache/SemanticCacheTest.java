@@ -0,0 +1,111 @@
+package com.creedpetitt.aiservicesbackend.semanticcache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemanticCacheTest {
+
+    private final HashingEmbeddingProvider embeddings = new HashingEmbeddingProvider(256);
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void nearDuplicatePromptsHitAndUnrelatedOnesMiss() {
+        SemanticCache cache = cache(100);
+        cache.put("openai", "How do I reverse a linked list in Java?", "Iterate and flip the next pointers.");
+
+        assertEquals(Optional.of("Iterate and flip the next pointers."),
+                cache.get("openai", "how do I reverse a linked list in java"));
+        assertTrue(cache.get("openai", "What is the capital of France?").isEmpty());
+        assertTrue(cache.get("claude", "How do I reverse a linked list in Java?").isEmpty());
+    }
+
+    @Test
+    void embeddingsAreDeterministic() {
+        float[] first = embeddings.embed("Write a haiku about autumn");
+        float[] second = new HashingEmbeddingProvider(256).embed("Write a haiku about autumn");
+
+        assertEquals(Arrays.toString(first), Arrays.toString(second));
+    }
+
+    @Test
+    void oldestEntriesAreEvictedAtTheSizeLimitAndTheIndexIsRebuilt() {
+        SemanticCache cache = cache(20);
+        for (int i = 0; i < 200; i++) {
+            cache.put("openai", "question number " + i + " about topic " + (i * 7919), "answer " + i);
+        }
+
+        assertEquals(20, cache.size());
+        assertTrue(cache.get("openai", "question number 0 about topic 0").isEmpty());
+        assertEquals(Optional.of("answer 199"), cache.get("openai", "question number 199 about topic " + (199 * 7919)));
+    }
+
+    @Test
+    void expiredEntriesAreNotReturnedAndAreSwept() {
+        SemanticCache cache = cache(100);
+        cache.put("openai", "Explain recursion", "It calls itself.");
+
+        clock.advance(Duration.ofHours(2));
+
+        assertTrue(cache.get("openai", "Explain recursion").isEmpty());
+        cache.evictExpired();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void snapshotRoundTrip(@TempDir Path dir) throws Exception {
+        SemanticCache cache = cache(100);
+        cache.put("openai", "Explain recursion", "It calls itself.");
+        cache.put("claude", "Explain recursion", "A function defined in terms of itself.");
+        Path file = dir.resolve("semantic-cache.bin");
+        cache.save(file);
+
+        SemanticCache restored = cache(100);
+        assertEquals(2, restored.load(file));
+        assertEquals(Optional.of("A function defined in terms of itself."), restored.get("claude", "explain recursion"));
+        assertEquals(0, new SemanticCache(new HashingEmbeddingProvider(64), settings(100), clock).load(file));
+    }
+
+    private SemanticCache cache(int maxEntries) {
+        return new SemanticCache(embeddings, settings(maxEntries), clock);
+    }
+
+    private static SemanticCache.Settings settings(int maxEntries) {
+        return new SemanticCache.Settings(maxEntries, Duration.ofHours(1), 0.9f, 8, 50, 32);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
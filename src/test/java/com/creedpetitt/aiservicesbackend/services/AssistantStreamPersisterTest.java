@@ -0,0 +1,167 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.models.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class AssistantStreamPersisterTest {
+
+    private MessageService messageService;
+    private ConversationSummarizer summarizer;
+    private AssistantStreamPersister persister;
+    private final AtomicReference<String> writerThread = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        messageService = mock(MessageService.class);
+        summarizer = mock(ConversationSummarizer.class);
+        // Batches of 3 chunks; the interval is long enough never to fire during a test
+        persister = new AssistantStreamPersister(messageService, summarizer, 1, 10, 3, Duration.ofHours(1), Duration.ofMinutes(10));
+        doAnswer(invocation -> {
+            writerThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(messageService).appendAssistantContent(anyLong(), anyString());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        persister.shutdown();
+    }
+
+    @Test
+    void checkpointsEveryBatchAndFinalizesTheRemainder() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            finished.countDown();
+            return null;
+        }).when(messageService).finishAssistantMessage(anyLong(), any(), any(), anyBoolean());
+
+        AssistantStreamPersister.PersistedStream stream = persister.open(1L, 10L);
+        stream.append("a");
+        stream.append("b");
+        stream.append("c");
+        verify(messageService, timeout(1000)).appendAssistantContent(1L, "abc");
+        assertTrue(writerThread.get().startsWith("assistant-persist-"));
+
+        stream.append("d");
+        stream.complete();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+
+        ArgumentCaptor<String> delta = ArgumentCaptor.forClass(String.class);
+        verify(messageService).finishAssistantMessage(eq(1L), delta.capture(), eq(Message.MessageStatus.COMPLETE), eq(true));
+        assertEquals("d", delta.getValue());
+        verify(summarizer, timeout(1000)).summarizeIfNeeded(10L);
+    }
+
+    @Test
+    void failureKeepsPartialContentAsInterrupted() {
+        AssistantStreamPersister.PersistedStream stream = persister.open(2L, 10L);
+        stream.append("partial");
+        stream.fail();
+        stream.complete();
+
+        verify(messageService, timeout(1000)).finishAssistantMessage(2L, "partial", Message.MessageStatus.INTERRUPTED, true);
+        verify(summarizer, never()).summarizeIfNeeded(anyLong());
+    }
+
+    @Test
+    void emptyReplyIsFinishedWithoutContent() {
+        persister.open(3L, 10L).complete();
+
+        verify(messageService, timeout(1000)).finishAssistantMessage(3L, "", Message.MessageStatus.COMPLETE, false);
+        verify(messageService, never()).appendAssistantContent(anyLong(), anyString());
+    }
+
+    @Test
+    void failedFinalWriteIsRetriedWithItsText() {
+        doThrow(new IllegalStateException("connection reset"))
+                .doNothing()
+                .when(messageService).finishAssistantMessage(anyLong(), any(), any(), anyBoolean());
+
+        AssistantStreamPersister.PersistedStream stream = persister.open(4L, 10L);
+        stream.append("last words");
+        stream.complete();
+
+        verify(messageService, timeout(3000).times(2))
+                .finishAssistantMessage(4L, "last words", Message.MessageStatus.COMPLETE, true);
+        verify(summarizer, timeout(1000)).summarizeIfNeeded(10L);
+    }
+
+    @Test
+    void finalWriteGivesUpAfterBoundedAttempts() throws InterruptedException {
+        doThrow(new IllegalStateException("database down"))
+                .when(messageService).finishAssistantMessage(anyLong(), any(), any(), anyBoolean());
+
+        persister.open(5L, 10L).complete();
+
+        // Backoff grows 0.5s per attempt, so all attempts are done well within 6s
+        verify(messageService, timeout(6000).times(AssistantStreamPersister.MAX_FINAL_ATTEMPTS))
+                .finishAssistantMessage(5L, "", Message.MessageStatus.COMPLETE, false);
+        Thread.sleep(700);
+        verify(messageService, times(AssistantStreamPersister.MAX_FINAL_ATTEMPTS))
+                .finishAssistantMessage(anyLong(), any(), any(), anyBoolean());
+        verify(summarizer, never()).summarizeIfNeeded(anyLong());
+    }
+
+    @Test
+    void batchThatCameDueDuringASlowWriteIsWrittenAfterIt() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(messageService).appendAssistantContent(7L, "abc");
+
+        AssistantStreamPersister.PersistedStream stream = persister.open(7L, 10L);
+        stream.append("a");
+        stream.append("b");
+        stream.append("c");
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+        // A full batch arrives while the first write is still in flight, then the provider goes quiet
+        stream.append("d");
+        stream.append("e");
+        stream.append("f");
+        release.countDown();
+
+        verify(messageService, timeout(1000)).appendAssistantContent(7L, "def");
+    }
+
+    @Test
+    void bufferedTextIsCheckpointedWhenTheProviderStalls() throws InterruptedException {
+        AssistantStreamPersister stalling = new AssistantStreamPersister(messageService, summarizer,
+                1, 10, 100, Duration.ofMillis(50), Duration.ofMinutes(10));
+        try {
+            AssistantStreamPersister.PersistedStream stream = stalling.open(6L, 10L);
+            stream.append("first");
+            stream.append(" words");
+
+            // No further chunk arrives, yet the interval still flushes
+            verify(messageService, timeout(1000)).appendAssistantContent(6L, "first words");
+        } finally {
+            stalling.shutdown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatResponseCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ChatResponseCache cache = new ChatResponseCache(meterRegistry, true, DataSize.ofMegabytes(1), Duration.ofHours(1), 4);
+
+    @Test
+    void identicalPromptsModuloWhitespaceShareAnEntry() {
+        ChatResponseCache.Key key = cache.keyFor(new StubChatService("openai"), ChatContext.EMPTY, "  Explain   recursion\n", null);
+        cache.put(key, "It calls itself.");
+
+        ChatResponseCache.Key same = cache.keyFor(new StubChatService("openai"), ChatContext.EMPTY, "Explain recursion", null);
+        ChatResponseCache.Key otherModel = cache.keyFor(new StubChatService("claude"), ChatContext.EMPTY, "Explain recursion", null);
+
+        assertEquals("It calls itself.", cache.get(same).orElseThrow());
+        assertNotEquals(key, otherModel);
+        assertTrue(cache.get(otherModel).isEmpty());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "chat.response").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "chat.response").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void onlyContextFreeTurnsWithoutImagesAreCacheable() {
+        StubChatService chatService = new StubChatService("openai");
+
+        assertNull(cache.keyFor(chatService, new ChatContext(null, List.of(new UserMessage("earlier"))), "hi", null));
+        assertNull(cache.keyFor(chatService, new ChatContext("summary", List.of()), "hi", null));
+        assertNull(cache.keyFor(chatService, ChatContext.EMPTY, "hi", "https://example.com/cat.png"));
+        assertNull(new ChatResponseCache(meterRegistry, false, DataSize.ofMegabytes(1), Duration.ofHours(1), 4)
+                .keyFor(chatService, ChatContext.EMPTY, "hi", null));
+    }
+
+    @Test
+    void hitsAreReplayedInChunks() {
+        List<String> chunks = cache.replay("Hello world").collectList().block();
+
+        assertEquals(List.of("Hell", "o wo", "rld"), chunks);
+    }
+}
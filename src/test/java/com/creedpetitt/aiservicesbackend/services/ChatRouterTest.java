@@ -0,0 +1,168 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatModel;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatRouterTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private FakeChatModel primaryModel;
+    private FakeChatModel fallbackModel;
+    private ChatService primary;
+    private ChatService fallback;
+    private final AtomicReference<ChatService> servedBy = new AtomicReference<>();
+    private ChatServiceFactory chatServiceFactory;
+
+    @BeforeEach
+    void setUp() {
+        primaryModel = new FakeChatModel("primary");
+        fallbackModel = new FakeChatModel("fallback");
+        primary = new StubChatService("openai", primaryModel);
+        fallback = new StubChatService("claude", fallbackModel);
+        chatServiceFactory = new ChatServiceFactory(List.of(primary, fallback));
+        environment.setProperty("app.chat.routing.fallback.openai", "claude");
+    }
+
+    @Test
+    void errorBeforeFirstTokenFailsOverToFallback() {
+        primaryModel.error = new IllegalStateException("503 from provider");
+
+        assertEquals(List.of("fallback-0", "fallback-1"), reply(router(false, 3)));
+        assertSame(fallback, servedBy.get());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.failover",
+                "from", "openai", "to", "claude", "reason", "error").count());
+    }
+
+    @Test
+    void healthyProviderIsReportedAsServingTheTurn() {
+        assertEquals(List.of("primary-0", "primary-1"), reply(router(true, 3)));
+        assertSame(primary, servedBy.get());
+    }
+
+    @Test
+    void missedFirstTokenDeadlineFailsOverAndCancelsTheSlowProvider() {
+        primaryModel.firstTokenDelay = Duration.ofSeconds(10);
+
+        assertEquals(List.of("fallback-0", "fallback-1"), reply(router(false, 3)));
+        assertTrue(primaryModel.cancelled.get());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.failover",
+                "from", "openai", "to", "claude", "reason", "first_token_timeout").count());
+    }
+
+    @Test
+    void errorAfterFirstTokenReachesTheClient() {
+        primaryModel.errorAfterFirstToken = new IllegalStateException("connection reset");
+
+        assertThrows(IllegalStateException.class, () -> reply(router(false, 3)));
+        assertEquals(0, fallbackModel.calls.get());
+    }
+
+    @Test
+    void repeatedlyFailingProviderIsSkippedUntilCooldown() {
+        ChatRouter router = router(false, 2);
+        primaryModel.error = new IllegalStateException("503 from provider");
+        reply(router);
+        reply(router);
+        assertFalse(router.isAvailable("openai"));
+
+        reply(router);
+
+        // The third turn went straight to the fallback
+        assertEquals(2, primaryModel.calls.get());
+        assertEquals(3, fallbackModel.calls.get());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.failover",
+                "from", "openai", "to", "claude", "reason", "unhealthy").count());
+    }
+
+    @Test
+    void hedgeKeepsTheFirstProviderToAnswerAndCancelsTheOther() {
+        primaryModel.firstTokenDelay = Duration.ofSeconds(2);
+
+        long startedAt = System.nanoTime();
+        assertEquals(List.of("fallback-0", "fallback-1"), reply(router(true, 3)));
+
+        // Answered by the hedge well before the slow provider's first token or the deadline
+        assertTrue(Duration.ofNanos(System.nanoTime() - startedAt).compareTo(Duration.ofSeconds(1)) < 0);
+        assertTrue(primaryModel.cancelled.get());
+        assertSame(fallback, servedBy.get());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.hedged", "model", "openai").count());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.hedge.wins", "model", "claude").count());
+    }
+
+    @Test
+    void hedgeThatLosesIsNotCountedAsAWin() {
+        primaryModel.firstTokenDelay = Duration.ofMillis(200);
+        fallbackModel.firstTokenDelay = Duration.ofSeconds(2);
+
+        assertEquals(List.of("primary-0", "primary-1"), reply(router(true, 3)));
+
+        assertTrue(fallbackModel.cancelled.get());
+        assertSame(primary, servedBy.get());
+        assertEquals(1.0, meterRegistry.counter("chat.routing.hedged", "model", "openai").count());
+        assertEquals(0.0, meterRegistry.counter("chat.routing.hedge.wins", "model", "claude").count());
+    }
+
+    private ChatRouter router(boolean hedge, int failureThreshold) {
+        return new ChatRouter(chatServiceFactory, environment, Duration.ofMillis(300), hedge,
+                Duration.ofMillis(50), Duration.ofMillis(10), failureThreshold, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    private List<String> reply(ChatRouter router) {
+        return router.getResponseStream(primary, ChatContext.EMPTY, "hi", null, servedBy).collectList().block(WAIT);
+    }
+
+    // Two tokens after an optional delay; fails before the first token or after it when asked to
+    private static final class FakeChatModel extends StubChatModel {
+
+        private final String name;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        volatile Duration firstTokenDelay = Duration.ZERO;
+        volatile RuntimeException error;
+        volatile RuntimeException errorAfterFirstToken;
+
+        FakeChatModel(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected Flux<String> tokens(Prompt prompt) {
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                if (error != null) {
+                    return Flux.error(error);
+                }
+                Flux<String> tokens = Flux.just(name + "-0", name + "-1");
+                if (errorAfterFirstToken != null) {
+                    tokens = tokens.take(1).concatWith(Flux.error(errorAfterFirstToken));
+                }
+                return tokens.delaySubscription(firstTokenDelay)
+                        .doOnCancel(() -> cancelled.set(true));
+            });
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One streamed reply (2,000 token-sized fragments) written as SSE events to /dev/null, one
+ * write+flush per event as the servlet container does. The primary score is streams/s on one
+ * thread, so its inverse is the CPU cost per stream; the "bytes" and "events" counters are per
+ * second. maxBytes=0 is the uncoalesced baseline. Fragments arrive back to back here, so batches
+ * close on size; max-delay only matters for paced provider streams. Add -prof gc for allocation.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.creedpetitt.aiservicesbackend.services.ChunkCoalescerBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkCoalescerBenchmark {
+
+    private static final int FRAGMENTS = 2_000;
+
+    @Param({"0", "64", "256", "1024"})
+    public int maxBytes;
+
+    @Param({"20"})
+    public int maxDelayMillis;
+
+    private ChunkCoalescer coalescer;
+    private List<String> fragments;
+    private OutputStream client;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Written {
+        public long bytes;
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            events = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        coalescer = new ChunkCoalescer(maxBytes, Duration.ofMillis(maxDelayMillis));
+        fragments = new ArrayList<>(FRAGMENTS);
+        for (int i = 0; i < FRAGMENTS; i++) {
+            // Typical BPE fragment: a short word with its leading space
+            fragments.add(" " + "token".substring(0, 1 + ThreadLocalRandom.current().nextInt(5)));
+        }
+        client = new FileOutputStream("/dev/null");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public void stream(Written written) {
+        coalescer.coalesce(Flux.fromIterable(fragments))
+                .doOnNext(chunk -> {
+                    byte[] event = ("data:" + chunk + "\n\n").getBytes(StandardCharsets.UTF_8);
+                    try {
+                        client.write(event);
+                        client.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written.bytes += event.length;
+                    written.events++;
+                })
+                .blockLast();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChunkCoalescerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,63 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkCoalescerTest {
+
+    @Test
+    void firstChunkPassesThroughAndTheRestIsMergedByBytes() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(8, Duration.ofHours(1));
+
+        List<String> events = coalescer.coalesce(Flux.just("a", "bcde", "fghi", "j")).collectList().block();
+
+        assertEquals(List.of("a", "bcdefghi", "j"), events);
+    }
+
+    @Test
+    void bufferedChunksAreFlushedAfterMaxDelay() throws InterruptedException {
+        // Long enough that "b" and "c" always land in the same batch
+        ChunkCoalescer coalescer = new ChunkCoalescer(1024, Duration.ofMillis(200));
+        Sinks.Many<String> source = Sinks.many().unicast().onBackpressureBuffer();
+        List<String> events = new CopyOnWriteArrayList<>();
+        coalescer.coalesce(source.asFlux()).subscribe(events::add);
+
+        source.tryEmitNext("first");
+        assertEquals(List.of("first"), events);
+
+        source.tryEmitNext("b");
+        source.tryEmitNext("c");
+        assertEquals(1, events.size());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of("first", "bc"), events);
+    }
+
+    @Test
+    void cancellingDownstreamCancelsTheSource() {
+        ChunkCoalescer coalescer = new ChunkCoalescer(1024, Duration.ofMillis(30));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<String> source = Flux.<String>never().startWith("a").doOnCancel(() -> cancelled.set(true));
+
+        String first = coalescer.coalesce(source).blockFirst(Duration.ofSeconds(1));
+
+        assertEquals("a", first);
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void countsUtf8Bytes() {
+        assertEquals(1 + 2 + 3 + 4, ChunkCoalescer.utf8Length("a\u00e9\u20ac\ud83d\ude00"));
+    }
+}
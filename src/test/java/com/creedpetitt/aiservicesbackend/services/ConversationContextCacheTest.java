@@ -0,0 +1,82 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.CachedContext;
+import com.creedpetitt.aiservicesbackend.services.ConversationContextCache.Turn;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ConversationContextCacheTest {
+
+    @Test
+    void completedReplyReplacesItsCachedPartialText() {
+        CachedContext context = new CachedContext(List.of(user(1, "hi"), assistant(2, "Hel")), true, 2);
+
+        CachedContext updated = context.append(assistant(2, "Hello there"), 1000);
+
+        assertEquals(List.of("hi", "Hello there"), contents(updated));
+        assertEquals(1 + 3, updated.tokens());
+    }
+
+    @Test
+    void replyFinishingAfterNewerTurnsKeepsItsPlace() {
+        // An image generation was cached while the reply to message 1 was still streaming
+        CachedContext context = new CachedContext(List.of(user(1, "hi"), user(3, "draw a cat")), true, 2);
+
+        CachedContext updated = context.append(assistant(2, "Hello"), 1000);
+
+        assertEquals(List.of(1L, 2L, 3L), updated.turns().stream().map(Turn::messageId).toList());
+    }
+
+    @Test
+    void turnOlderThanATrimmedWindowIsIgnored() {
+        CachedContext context = new CachedContext(List.of(user(5, "later")), false, 1);
+
+        assertSame(context, context.append(assistant(2, "earlier"), 1000));
+    }
+
+    @Test
+    void entryBehindTheDatabaseIsReloaded() {
+        ConversationContextCache cache = new ConversationContextCache(new SimpleMeterRegistry(),
+                DataSize.ofMegabytes(1), 16_000, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1L, 2L, id -> {
+            loads.incrementAndGet();
+            return new CachedContext(List.of(user(1, "hi"), assistant(2, "Hello")), true, 2);
+        });
+
+        cache.get(1L, 2L, id -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertEquals(1, loads.get());
+
+        // Message 4 was written through another replica
+        CachedContext reloaded = cache.get(1L, 4L, id -> {
+            loads.incrementAndGet();
+            return new CachedContext(List.of(user(1, "hi"), assistant(2, "Hello"), user(3, "more"), assistant(4, "Sure")), true, 4);
+        });
+        assertEquals(2, loads.get());
+        assertEquals(4L, reloaded.turns().get(3).messageId());
+    }
+
+    private static Turn user(long id, String content) {
+        return new Turn(id, Message.MessageType.USER, content, content.length() / 4 + 1);
+    }
+
+    private static Turn assistant(long id, String content) {
+        return new Turn(id, Message.MessageType.ASSISTANT, content, content.length() / 4 + 1);
+    }
+
+    private static List<String> contents(CachedContext context) {
+        return context.turns().stream().map(Turn::content).toList();
+    }
+}
@@ -0,0 +1,158 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatModel;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatService;
+import com.creedpetitt.aiservicesbackend.models.Conversation;
+import com.creedpetitt.aiservicesbackend.models.Message;
+import com.creedpetitt.aiservicesbackend.repositories.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ConversationSummarizerTest {
+
+    private static final Long CONVERSATION_ID = 7L;
+    // ~100 estimated tokens per message
+    private static final String LONG_TEXT = "word ".repeat(100);
+
+    private ConversationService conversationService;
+    private MessageRepository messageRepository;
+    private ConversationContextCache contextCache;
+    private SummaryChatModel chatModel;
+    private ConversationSummarizer summarizer;
+    private Conversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        conversationService = mock(ConversationService.class);
+        messageRepository = mock(MessageRepository.class);
+        contextCache = new ConversationContextCache(new SimpleMeterRegistry(), DataSize.ofMegabytes(1), 16_000, Duration.ofMinutes(5));
+        chatModel = new SummaryChatModel("Summary of the chat.");
+        ChatServiceFactory factory = new ChatServiceFactory(List.of(new StubChatService("stub", chatModel)));
+
+        summarizer = new ConversationSummarizer(conversationService, messageRepository, contextCache, factory,
+                "stub", 1_000, 4, 200, 300);
+
+        conversation = new Conversation();
+        conversation.setId(CONVERSATION_ID);
+        conversation.setAiModel("stub");
+        when(conversationService.getConversationById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(conversationService.saveSummary(anyLong(), anyString(), anyLong())).thenReturn(true);
+    }
+
+    @Test
+    void foldsOlderTurnsIntoSummaryAndKeepsRecentOnes() {
+        List<Message> messages = turns(1, 20);
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(eq(CONVERSATION_ID), eq(0L), any(Pageable.class)))
+                .thenReturn(messages);
+
+        assertTrue(summarizer.summarize(CONVERSATION_ID));
+
+        // 20 turns, keep the newest 4 (ids 17-20), so ids 1-16 are summarized
+        verify(conversationService).saveSummary(CONVERSATION_ID, "Summary of the chat.", 16L);
+        assertEquals(1, chatModel.calls.size());
+        String prompt = chatModel.calls.get(0).getUserMessage().getText();
+        assertTrue(prompt.contains("User: " + LONG_TEXT.trim()));
+        assertFalse(prompt.contains("Existing summary"));
+    }
+
+    @Test
+    void extendsTheExistingSummary() {
+        conversation.setSummary("Earlier they discussed caching.");
+        conversation.setSummarizedThroughMessageId(16L);
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(eq(CONVERSATION_ID), eq(16L), any(Pageable.class)))
+                .thenReturn(turns(17, 36));
+
+        assertTrue(summarizer.summarize(CONVERSATION_ID));
+
+        verify(conversationService).saveSummary(CONVERSATION_ID, "Summary of the chat.", 32L);
+        assertTrue(chatModel.calls.get(0).getUserMessage().getText().contains("Existing summary:\nEarlier they discussed caching."));
+    }
+
+    @Test
+    void skipsWhenBelowTheTrigger() {
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(eq(CONVERSATION_ID), eq(0L), any(Pageable.class)))
+                .thenReturn(turns(1, 6));
+
+        assertFalse(summarizer.summarize(CONVERSATION_ID));
+
+        assertTrue(chatModel.calls.isEmpty());
+        verify(conversationService, never()).saveSummary(anyLong(), anyString(), anyLong());
+    }
+
+    @Test
+    void cachedTurnsAnswerTheThresholdWithoutTheDatabase() {
+        contextCache.startConversation(CONVERSATION_ID);
+        Message message = turns(1, 1).get(0);
+        message.setConversation(conversation);
+        contextCache.append(message);
+
+        assertFalse(summarizer.summarize(CONVERSATION_ID));
+
+        verifyNoInteractions(messageRepository);
+        assertTrue(chatModel.calls.isEmpty());
+    }
+
+    @Test
+    void retainedHistoryStartsWithAUserTurn() {
+        // Keeping the newest 4 of 11 would start the retained history on an assistant reply (id 8)
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(eq(CONVERSATION_ID), eq(0L), any(Pageable.class)))
+                .thenReturn(turns(1, 11));
+
+        assertTrue(summarizer.summarize(CONVERSATION_ID));
+
+        verify(conversationService).saveSummary(CONVERSATION_ID, "Summary of the chat.", 6L);
+    }
+
+    // Alternating user/assistant messages with the given ids; odd ids are user turns
+    private static List<Message> turns(int fromId, int toId) {
+        List<Message> messages = new ArrayList<>();
+        for (int id = fromId; id <= toId; id++) {
+            Message message = new Message();
+            message.setId((long) id);
+            message.setContent(LONG_TEXT);
+            message.setMessageType(id % 2 == 1 ? Message.MessageType.USER : Message.MessageType.ASSISTANT);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static final class SummaryChatModel extends StubChatModel {
+
+        private final String reply;
+        private final List<Prompt> calls = new ArrayList<>();
+
+        SummaryChatModel(String reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.add(prompt);
+            return response(reply);
+        }
+    }
+}
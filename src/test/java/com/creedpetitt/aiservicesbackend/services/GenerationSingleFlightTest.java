@@ -0,0 +1,118 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatContext;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.aiservices.ChatServiceFactory;
+import com.creedpetitt.aiservicesbackend.aiservices.StubChatService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationSingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private SinkChatService chatService;
+    private GenerationSingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        chatService = new SinkChatService();
+        ChatRouter chatRouter = new ChatRouter(new ChatServiceFactory(List.of()), environment, Duration.ofSeconds(15),
+                false, Duration.ofSeconds(3), Duration.ofMillis(500), 3, Duration.ofSeconds(30), meterRegistry);
+        singleFlight = new GenerationSingleFlight(chatRouter, environment, true, meterRegistry);
+    }
+
+    @Test
+    void concurrentIdenticalTurnsShareOneGenerationAndFollowersGetTheWholeReply() {
+        List<String> leader = new CopyOnWriteArrayList<>();
+        List<String> follower = new CopyOnWriteArrayList<>();
+
+        generate(ChatContext.EMPTY, "Tell me a joke").subscribe(leader::add);
+        chatService.current.tryEmitNext("Why ");
+        AtomicReference<ChatService> followerServedBy = new AtomicReference<>();
+        singleFlight.getResponseStream(chatService, ChatContext.EMPTY, "  Tell me   a joke ", null, followerServedBy)
+                .subscribe(follower::add);
+        chatService.current.tryEmitNext("not?");
+        chatService.current.tryEmitComplete();
+
+        assertEquals(List.of("Why ", "not?"), leader);
+        assertEquals(List.of("Why ", "not?"), follower);
+        assertSame(chatService, followerServedBy.get());
+        assertEquals(1, chatService.generations.get());
+        assertEquals(1.0, meterRegistry.counter("chat.single_flight.joined", "model", "stub").count());
+        assertEquals(0, singleFlight.inFlightCount());
+
+        // Finished generations are not reused
+        generate(ChatContext.EMPTY, "Tell me a joke").subscribe();
+        assertEquals(2, chatService.generations.get());
+    }
+
+    @Test
+    void generationIsCancelledOnlyWhenEverySubscriberHasLeft() {
+        Disposable leader = generate(ChatContext.EMPTY, "hi").subscribe();
+        Disposable follower = generate(ChatContext.EMPTY, "hi").subscribe();
+
+        leader.dispose();
+        assertFalse(chatService.cancelled.get());
+
+        follower.dispose();
+        assertTrue(chatService.cancelled.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void turnsWithContextOrDisabledModelsAreNotShared() {
+        ChatContext context = new ChatContext(null, List.of(new UserMessage("earlier")));
+        generate(context, "hi").subscribe();
+        generate(context, "hi").subscribe();
+        assertEquals(2, chatService.generations.get());
+
+        environment.setProperty("app.chat.single-flight.enabled.stub", "false");
+        generate(ChatContext.EMPTY, "hi").subscribe();
+        generate(ChatContext.EMPTY, "hi").subscribe();
+        assertEquals(4, chatService.generations.get());
+    }
+
+    private Flux<String> generate(ChatContext context, String prompt) {
+        return singleFlight.getResponseStream(chatService, context, prompt, null, new AtomicReference<>());
+    }
+
+    // Hands out a fresh stream per generation that the test pushes chunks into
+    private static final class SinkChatService extends StubChatService {
+
+        final AtomicInteger generations = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        volatile Sinks.Many<String> current;
+
+        SinkChatService() {
+            super("stub");
+        }
+
+        @Override
+        public Flux<String> getResponseStream(ChatContext context, String prompt, String imageUrl) {
+            return Flux.defer(() -> {
+                generations.incrementAndGet();
+                current = Sinks.many().unicast().onBackpressureBuffer();
+                return current.asFlux().doOnCancel(() -> cancelled.set(true));
+            });
+        }
+    }
+}
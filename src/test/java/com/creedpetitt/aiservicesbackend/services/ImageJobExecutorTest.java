@@ -0,0 +1,233 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ImageService;
+import com.creedpetitt.aiservicesbackend.aiservices.ImageServiceFactory;
+import com.creedpetitt.aiservicesbackend.dto.ImageJobDto;
+import com.creedpetitt.aiservicesbackend.models.ImageJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageJobExecutorTest {
+
+    private static final Long USER_ID = 7L;
+
+    private ImageJobService imageJobService;
+    private RateLimitingService rateLimitingService;
+    private BlockingImageService imageService;
+    private ImageJobExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        imageJobService = mock(ImageJobService.class);
+        rateLimitingService = mock(RateLimitingService.class);
+        imageService = new BlockingImageService();
+        when(imageJobService.claim(anyString())).thenAnswer(call -> Optional.of(job(call.getArgument(0))));
+        when(imageJobService.complete(anyString(), anyList()))
+                .thenAnswer(call -> dto(call.getArgument(0), ImageJob.Status.SUCCEEDED, call.getArgument(1)));
+        when(imageJobService.fail(anyString(), anyString()))
+                .thenAnswer(call -> dto(call.getArgument(0), ImageJob.Status.FAILED, null));
+
+        executor = new ImageJobExecutor(imageJobService, new ImageServiceFactory(List.of(imageService)),
+                rateLimitingService, new SimpleMeterRegistry(), 2, 10,
+                Duration.ofSeconds(30), Duration.ofMinutes(2), Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        imageService.release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void poolSizeCapsConcurrentProviderCalls() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            executor.submit("job-" + i);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (imageService.running.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // The other three wait in the queue
+        Thread.sleep(100);
+        assertEquals(2, imageService.maxRunning.get());
+
+        imageService.release.countDown();
+        verify(imageJobService, timeout(2000).times(5)).complete(anyString(), anyList());
+        assertEquals(2, imageService.maxRunning.get());
+    }
+
+    @Test
+    void failedGenerationRefundsQuotaAndFailsTheJob() {
+        imageService.error = new IllegalStateException("quota exhausted upstream");
+        imageService.release.countDown();
+
+        executor.submit("job-1");
+
+        verify(imageJobService, timeout(2000)).fail(eq("job-1"), startsWith("Error generating image: quota exhausted upstream"));
+        verify(rateLimitingService).refundImages(USER_ID, 1);
+        verify(imageJobService, never()).complete(anyString(), anyList());
+    }
+
+    @Test
+    void failedSaveIsRetriedWithoutRefundingGeneratedImages() {
+        when(imageJobService.complete(eq("job-1"), anyList()))
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenAnswer(call -> dto("job-1", ImageJob.Status.SUCCEEDED, call.getArgument(1)));
+        imageService.release.countDown();
+
+        executor.submit("job-1");
+
+        verify(imageJobService, timeout(3000).times(2)).complete("job-1", List.of("https://images/job-1.png"));
+        verify(rateLimitingService, never()).refundImages(USER_ID, 1);
+        verify(imageJobService, never()).fail(anyString(), anyString());
+        assertEquals(1, imageService.calls.get());
+    }
+
+    @Test
+    void saveThatNeverLandsFailsTheJobButKeepsTheCharge() {
+        when(imageJobService.complete(eq("job-1"), anyList())).thenThrow(new IllegalStateException("database down"));
+        imageService.release.countDown();
+
+        executor.submit("job-1");
+
+        verify(imageJobService, timeout(5000)).fail("job-1", "Images were generated but could not be saved");
+        verify(imageJobService, times(ImageJobExecutor.MAX_COMPLETE_ATTEMPTS)).complete(eq("job-1"), anyList());
+        verify(rateLimitingService, never()).refundImages(USER_ID, 1);
+    }
+
+    @Test
+    void watchReportsCurrentStateThenLocalCompletion() {
+        when(imageJobService.getJob("job-1", USER_ID)).thenReturn(dto("job-1", ImageJob.Status.QUEUED, null));
+        List<ImageJobDto> events = new CopyOnWriteArrayList<>();
+        executor.watch("job-1", USER_ID).subscribe(events::add);
+
+        executor.submit("job-1");
+        imageService.release.countDown();
+
+        verify(imageJobService, timeout(2000)).complete(eq("job-1"), anyList());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (events.size() < 2 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        // The poll interval is 30s, so the completion can only have come from the local worker
+        verify(imageJobService, timeout(2000).times(1)).getJob("job-1", USER_ID);
+        assertEquals(List.of(ImageJob.Status.QUEUED, ImageJob.Status.SUCCEEDED),
+                events.stream().map(ImageJobDto::status).toList());
+        assertEquals(List.of("https://images/job-1.png"), events.get(1).imageUrls());
+    }
+
+    @Test
+    void partialBatchRefundsOnlyTheMissingImages() {
+        when(imageJobService.claim("job-1")).thenReturn(Optional.of(job("job-1", 4)));
+        imageService.failingVariations = 1;
+        imageService.release.countDown();
+
+        executor.submit("job-1");
+
+        verify(imageJobService, timeout(2000)).complete("job-1", List.of(
+                "https://images/job-1.png", "https://images/job-1.png", "https://images/job-1.png"));
+        verify(rateLimitingService).refundImages(USER_ID, 1);
+        assertEquals(4, imageService.calls.get());
+    }
+
+    @Test
+    void recoveredJobAlreadyClaimedElsewhereIsNotGenerated() throws Exception {
+        imageService.release.countDown();
+        when(imageJobService.findRecoverable(any(), any())).thenReturn(List.of("job-1", "job-2"));
+        when(imageJobService.claim("job-2")).thenReturn(Optional.empty());
+
+        executor.recover();
+
+        verify(imageJobService, timeout(2000)).complete(eq("job-1"), anyList());
+        verify(imageJobService, timeout(2000)).claim("job-2");
+        Thread.sleep(100);
+        assertEquals(1, imageService.calls.get());
+    }
+
+    private static ImageJob job(String id) {
+        return job(id, 1);
+    }
+
+    private static ImageJob job(String id, int imageCount) {
+        return new ImageJob(id, USER_ID, 0L, "prompt for " + id, "fake", imageCount);
+    }
+
+    private static ImageJobDto dto(String id, ImageJob.Status status, List<String> imageUrls) {
+        List<String> urls = imageUrls == null ? List.of() : imageUrls;
+        return new ImageJobDto(id, status, "prompt for " + id, "fake", Math.max(1, urls.size()), urls, 1L, null,
+                LocalDateTime.now(), status.isFinished() ? LocalDateTime.now() : null);
+    }
+
+    // Holds every call until released, tracking how many run at once
+    private static final class BlockingImageService implements ImageService {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        volatile RuntimeException error;
+        volatile int failingVariations;
+
+        @Override
+        public String generateImage(String prompt) {
+            calls.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                if (error != null) {
+                    throw error;
+                }
+                return "https://images/" + prompt.substring("prompt for ".length()) + ".png";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        // Like a provider that returns whatever variations succeeded
+        @Override
+        public List<String> generateImages(String prompt, int count) {
+            List<String> urls = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String url = generateImage(prompt);
+                if (i >= failingVariations) {
+                    urls.add(url);
+                }
+            }
+            return urls;
+        }
+
+        @Override
+        public String getImageModel() {
+            return "fake";
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.dto.SignedUploadDto;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageUploadServiceTest {
+
+    private static final int CHUNK = 256 * 1024;
+
+    private final List<FakeWriteChannel> writers = new ArrayList<>();
+    private final List<BlobInfo> blobs = new ArrayList<>();
+    private Storage storage;
+    private ImageUploadService imageUploadService;
+
+    @BeforeEach
+    void setUp() {
+        storage = mock(Storage.class);
+        when(storage.writer(any(BlobInfo.class))).thenAnswer(call -> {
+            blobs.add(call.getArgument(0));
+            FakeWriteChannel writer = new FakeWriteChannel();
+            writers.add(writer);
+            return writer;
+        });
+        // Streamed objects as they read back after the write; unknown keys have no owner
+        when(storage.get(any(BlobId.class))).thenAnswer(call -> blob(call.getArgument(0), 7L, Map.of()));
+        imageUploadService = new ImageUploadService(storage, "bucket", DataSize.ofKilobytes(256), Duration.ofMinutes(10));
+    }
+
+    @Test
+    void streamsTheFileInChunksWithTheSniffedType() throws Exception {
+        byte[] png = file(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}, 5 * 1024 * 1024 + 123);
+
+        // Declared type and name are ignored in favour of the bytes
+        String url = imageUploadService.uploadUserImage(
+                new MockMultipartFile("file", "photo.txt", "text/plain", png), 42L);
+
+        FakeWriteChannel writer = writers.get(0);
+        assertArrayEquals(png, writer.written.toByteArray());
+        assertTrue(writer.closed);
+        assertEquals(CHUNK, writer.chunkSize);
+        assertTrue(writer.largestWrite <= CHUNK);
+        assertEquals("image/png", blobs.get(0).getContentType());
+        assertTrue(blobs.get(0).getName().startsWith("uploads/") && blobs.get(0).getName().endsWith(".png"));
+        assertEquals("https://storage.googleapis.com/bucket/" + blobs.get(0).getName(), url);
+        verify(storage, never()).create(any(BlobInfo.class), any(byte[].class));
+        assertEquals(Map.of("uploaded-by", "42"), blobs.get(0).getMetadata());
+        assertCheckedAt(blobs.get(0).getName(), 7L);
+    }
+
+    @Test
+    void recognizesEachSupportedType() throws Exception {
+        upload(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0});
+        upload("GIF89a".getBytes());
+        upload("RIFF\0\0\0\0WEBPVP8 ".getBytes());
+        upload("%PDF-1.7".getBytes());
+
+        assertEquals(List.of("image/jpeg", "image/gif", "image/webp", "application/pdf"),
+                blobs.stream().map(BlobInfo::getContentType).toList());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotImagesBeforeOpeningAnUpload() {
+        MockMultipartFile disguised = new MockMultipartFile("file", "evil.png", "image/png", "<html><script>".getBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> imageUploadService.uploadUserImage(disguised, 42L));
+        assertTrue(writers.isEmpty());
+    }
+
+    @Test
+    void oversizedStreamIsAbandonedWithoutFinalizing() {
+        byte[] tooBig = file("%PDF-".getBytes(), (int) ImageUploadService.MAX_FILE_SIZE + 1);
+        // Reports a small size, so only the byte count while streaming catches it
+        MockMultipartFile file = new MockMultipartFile("file", "big.pdf", "application/pdf", tooBig) {
+            @Override
+            public long getSize() {
+                return 1;
+            }
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> imageUploadService.uploadUserImage(file, 42L));
+        assertFalse(writers.get(0).closed);
+    }
+
+    @Test
+    void signedUploadIsForAFreshKeyOfTheDeclaredType() throws Exception {
+        ArgumentCaptor<BlobInfo> signed = ArgumentCaptor.forClass(BlobInfo.class);
+        when(storage.signUrl(signed.capture(), eq(600L), eq(TimeUnit.SECONDS), any(Storage.SignUrlOption[].class)))
+                .thenReturn(new URL("https://storage.googleapis.com/bucket/signed"));
+
+        SignedUploadDto upload = imageUploadService.createSignedUpload("image/webp", 42L);
+
+        assertEquals("https://storage.googleapis.com/bucket/signed", upload.uploadUrl());
+        assertTrue(upload.objectKey().matches("uploads/[0-9a-f-]{36}\\.webp"));
+        assertEquals(upload.objectKey(), signed.getValue().getName());
+        assertEquals("image/webp", signed.getValue().getContentType());
+        assertEquals("image/webp", upload.headers().get("Content-Type"));
+        assertEquals("0," + ImageUploadService.MAX_FILE_SIZE, upload.headers().get("x-goog-content-length-range"));
+        assertEquals("0", upload.headers().get("x-goog-if-generation-match"));
+        assertEquals("42", upload.headers().get("x-goog-meta-uploaded-by"));
+        assertThrows(IllegalArgumentException.class, () -> imageUploadService.createSignedUpload("text/html", 42L));
+    }
+
+    @Test
+    void finalizeAcceptsAnObjectWhoseMetadataAndBytesMatch() throws Exception {
+        String key = "uploads/123e4567-e89b-12d3-a456-426614174000.png";
+        uploaded(key, "image/png", 2048, new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+        assertEquals("https://storage.googleapis.com/bucket/" + key, imageUploadService.finalizeSignedUpload(key, 42L));
+        verify(storage, never()).delete(any(BlobId.class));
+        assertCheckedAt(key, 3L);
+    }
+
+    @Test
+    void finalizeHidesAnotherUsersUploadAndLeavesItAlone() throws Exception {
+        String key = "uploads/123e4567-e89b-12d3-a456-426614174000.png";
+        uploaded(key, "image/png", 2048, "<html><script>".getBytes());
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> imageUploadService.finalizeSignedUpload(key, 7L));
+        assertEquals(HttpStatus.NOT_FOUND, error.getStatusCode());
+        verify(storage, never()).delete(any(BlobId.class));
+    }
+
+    @Test
+    void finalizeDeletesAnObjectThatIsNotWhatWasSigned() throws Exception {
+        String key = "uploads/123e4567-e89b-12d3-a456-426614174000.png";
+        uploaded(key, "image/png", 2048, "<html><script>".getBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> imageUploadService.finalizeSignedUpload(key, 42L));
+        verify(storage).delete(BlobId.of("bucket", key));
+        verify(storage, never()).update(any(BlobInfo.class));
+    }
+
+    @Test
+    void finalizeOnlyTouchesSignedUploadKeys() {
+        assertThrows(IllegalArgumentException.class, () -> imageUploadService.finalizeSignedUpload("images/1.png", 42L));
+        assertThrows(IllegalArgumentException.class,
+                () -> imageUploadService.finalizeSignedUpload("uploads/../secrets/123e4567-e89b-12d3-a456-426614174000.png", 42L));
+        assertThrows(ResponseStatusException.class,
+                () -> imageUploadService.finalizeSignedUpload("uploads/123e4567-e89b-12d3-a456-426614174000.pdf", 42L));
+        verify(storage, never()).delete(any(BlobId.class));
+    }
+
+    @Test
+    void onlyTheOwnersCheckedUploadsAreAcceptedForChat() {
+        String key = "uploads/123e4567-e89b-12d3-a456-426614174000.png";
+        String url = "https://storage.googleapis.com/bucket/" + key;
+        BlobId blobId = BlobId.of("bucket", key);
+        Blob checked = blob(blobId, 3L, Map.of("uploaded-by", "42", "checked-generation", "3"));
+        Blob replaced = blob(blobId, 4L, Map.of("uploaded-by", "42", "checked-generation", "3"));
+        Blob unchecked = blob(blobId, 3L, Map.of("uploaded-by", "42"));
+        when(storage.get(blobId)).thenReturn(checked);
+
+        assertTrue(imageUploadService.isCheckedUpload(url, 42L));
+        assertFalse(imageUploadService.isCheckedUpload(url, 7L));
+        assertFalse(imageUploadService.isCheckedUpload("https://storage.googleapis.com/other/" + key, 42L));
+        assertFalse(imageUploadService.isCheckedUpload("https://example.com/cat.png", 42L));
+        assertFalse(imageUploadService.isCheckedUpload("https://storage.googleapis.com/bucket/images/1.png", 42L));
+
+        // Replaced after the check, or never checked at all
+        when(storage.get(blobId)).thenReturn(replaced);
+        assertFalse(imageUploadService.isCheckedUpload(url, 42L));
+        when(storage.get(blobId)).thenReturn(unchecked);
+        assertFalse(imageUploadService.isCheckedUpload(url, 42L));
+    }
+
+    private void assertCheckedAt(String key, long generation) {
+        ArgumentCaptor<BlobInfo> updated = ArgumentCaptor.forClass(BlobInfo.class);
+        verify(storage).update(updated.capture());
+        assertEquals(BlobId.of("bucket", key), updated.getValue().getBlobId());
+        assertEquals(Map.of("checked-generation", String.valueOf(generation)), updated.getValue().getMetadata());
+    }
+
+    private static Blob blob(BlobId blobId, long generation, Map<String, String> metadata) {
+        Blob blob = mock(Blob.class);
+        when(blob.getBlobId()).thenReturn(blobId);
+        when(blob.getGeneration()).thenReturn(generation);
+        when(blob.getMetadata()).thenReturn(metadata);
+        return blob;
+    }
+
+    private void uploaded(String key, String contentType, long size, byte[] contents) throws Exception {
+        BlobId blobId = BlobId.of("bucket", key);
+        Blob blob = blob(blobId, 3L, Map.of("uploaded-by", "42"));
+        when(blob.getContentType()).thenReturn(contentType);
+        when(blob.getSize()).thenReturn(size);
+        when(storage.get(blobId)).thenReturn(blob);
+
+        ReadChannel reader = mock(ReadChannel.class);
+        ByteBuffer remaining = ByteBuffer.wrap(contents);
+        when(reader.read(any(ByteBuffer.class))).thenAnswer(call -> {
+            ByteBuffer dst = call.getArgument(0);
+            if (!remaining.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(), remaining.remaining());
+            dst.put(remaining.array(), remaining.position(), length);
+            remaining.position(remaining.position() + length);
+            return length;
+        });
+        when(storage.reader(blobId)).thenReturn(reader);
+    }
+
+    private void upload(byte[] header) throws Exception {
+        imageUploadService.uploadUserImage(new MockMultipartFile("file", "f", null, file(header, 1024)), 42L);
+    }
+
+    private static byte[] file(byte[] header, int size) {
+        byte[] data = Arrays.copyOf(header, size);
+        for (int i = header.length; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    // Stands in for a GCS resumable upload session
+    private static final class FakeWriteChannel implements WriteChannel {
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        int chunkSize;
+        int largestWrite;
+        boolean closed;
+
+        @Override
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public RestorableState<WriteChannel> capture() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            largestWrite = Math.max(largestWrite, length);
+            byte[] bytes = new byte[length];
+            src.get(bytes);
+            written.writeBytes(bytes);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
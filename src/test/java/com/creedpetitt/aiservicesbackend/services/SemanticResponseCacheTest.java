@@ -0,0 +1,49 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.aiservices.ChatService;
+import com.creedpetitt.aiservicesbackend.semanticcache.EmbeddingProvider;
+import com.creedpetitt.aiservicesbackend.semanticcache.SemanticCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SemanticResponseCacheTest {
+
+    @Test
+    void failingEmbeddingCallIsAMiss() {
+        EmbeddingProvider unreachable = new EmbeddingProvider() {
+            @Override
+            public int dimensions() {
+                return 8;
+            }
+
+            @Override
+            public float[] embed(String text) {
+                throw new IllegalStateException("503 from embedding model");
+            }
+        };
+        SemanticCache semanticCache = new SemanticCache(unreachable,
+                new SemanticCache.Settings(100, Duration.ofHours(1), 0.92f, 16, 100, 64), Clock.systemUTC());
+        @SuppressWarnings("unchecked")
+        ObjectProvider<SemanticCache> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(semanticCache);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.getModel()).thenReturn("openai");
+        when(chatService.getSystemPrompt(any())).thenReturn("You are helpful.");
+
+        SemanticResponseCache cache = new SemanticResponseCache(provider, meterRegistry, "");
+
+        assertEquals(Optional.empty(), cache.get(chatService, "Write a haiku about autumn"));
+        assertEquals(1.0, meterRegistry.counter("chat.semantic_cache.lookups", "result", "miss").count());
+    }
+}
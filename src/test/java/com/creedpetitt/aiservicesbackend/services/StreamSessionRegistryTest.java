@@ -0,0 +1,93 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.services.StreamSessionRegistry.StreamEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamSessionRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void completedStreamIsReplayedFromLastEventIdWithoutCallingTheProviderAgain() {
+        StreamSessionRegistry registry = new StreamSessionRegistry(16, Duration.ofMinutes(1), Duration.ofMinutes(2), meterRegistry);
+        AtomicInteger providerCalls = new AtomicInteger();
+        Flux<String> provider = Flux.just("a", "b", "c").doOnSubscribe(s -> providerCalls.incrementAndGet());
+
+        List<StreamEvent> first = registry.start(1L, provider).collectList().block();
+        assertEquals(List.of(1L, 2L, 3L), first.stream().map(StreamEvent::sequence).toList());
+
+        List<String> replayed = registry.resume(first.get(0).id(), 1L).map(StreamEvent::data).collectList().block();
+
+        assertEquals(List.of("b", "c"), replayed);
+        assertEquals(1, providerCalls.get());
+        assertEquals(1.0, meterRegistry.counter("chat.stream.resumed", "state", "completed").count());
+    }
+
+    @Test
+    void reconnectAttachesToTheLiveGeneration() throws InterruptedException {
+        StreamSessionRegistry registry = new StreamSessionRegistry(16, Duration.ofMinutes(1), Duration.ofMinutes(2), meterRegistry);
+        Sinks.Many<String> provider = Sinks.many().unicast().onBackpressureBuffer();
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        List<StreamEvent> received = new CopyOnWriteArrayList<>();
+        Disposable connection = registry.start(1L, provider.asFlux().doOnCancel(cancelled::countDown)).subscribe(received::add);
+        provider.tryEmitNext("a");
+        connection.dispose();
+        provider.tryEmitNext("b");
+
+        List<String> resumed = new CopyOnWriteArrayList<>();
+        registry.resume(received.get(0).id(), 1L).subscribe(event -> resumed.add(event.data()));
+        provider.tryEmitNext("c");
+        provider.tryEmitComplete();
+
+        assertEquals(List.of("b", "c"), resumed);
+        assertFalse(cancelled.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void detachedStreamIsCancelledAfterTheGracePeriod() throws InterruptedException {
+        StreamSessionRegistry registry = new StreamSessionRegistry(16, Duration.ofMillis(50), Duration.ofMinutes(2), meterRegistry);
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        registry.start(1L, Flux.<String>never().doOnCancel(cancelled::countDown)).subscribe().dispose();
+
+        assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void unknownForeignOrExpiredStreamsCannotBeResumed() {
+        StreamSessionRegistry registry = new StreamSessionRegistry(2, Duration.ofMinutes(1), Duration.ZERO, meterRegistry);
+        List<StreamEvent> events = registry.start(1L, Flux.just("a", "b", "c", "d")).collectList().block();
+
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(ResponseStatusException.class,
+                () -> registry.resume("no-sequence", 1L)).getStatusCode());
+        assertEquals(HttpStatus.GONE, assertThrows(ResponseStatusException.class,
+                () -> registry.resume(events.get(0).id(), 2L)).getStatusCode());
+        // Only the last two events are buffered, so resuming after the first would leave a gap
+        assertEquals(HttpStatus.GONE, assertThrows(ResponseStatusException.class,
+                () -> registry.resume(events.get(0).id(), 1L)).getStatusCode());
+
+        registry.evictExpired();
+        assertEquals(0, registry.size());
+        assertEquals(HttpStatus.GONE, assertThrows(ResponseStatusException.class,
+                () -> registry.resume(events.get(3).id(), 1L)).getStatusCode());
+    }
+}
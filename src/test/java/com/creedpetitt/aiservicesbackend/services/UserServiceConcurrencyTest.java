@@ -0,0 +1,116 @@
+package com.creedpetitt.aiservicesbackend.services;
+
+import com.creedpetitt.aiservicesbackend.models.AppUser;
+import com.creedpetitt.aiservicesbackend.repositories.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:mem:quota;MODE=PostgreSQL;LOCK_TIMEOUT=10000",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(UserService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserServiceConcurrencyTest {
+
+    private static final int REQUESTS = 400;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void parallelMessageRequestsNeverExceedTheCap() throws Exception {
+        Long userId = createUser("messages").getId();
+
+        int granted = fireConcurrently(() ->
+                userService.tryIncrementMessageCount(userId, RateLimitingService.MAX_AUTHENTICATED_REQUESTS));
+
+        assertEquals(RateLimitingService.MAX_AUTHENTICATED_REQUESTS, granted);
+        assertEquals(RateLimitingService.MAX_AUTHENTICATED_REQUESTS, userService.getCurrentMessageCount(userId));
+    }
+
+    @Test
+    void parallelImageRequestsNeverExceedTheCap() throws Exception {
+        Long userId = createUser("images").getId();
+
+        int granted = fireConcurrently(() ->
+                userService.tryIncrementImageCount(userId, RateLimitingService.MAX_IMAGES_PER_USER));
+
+        assertEquals(RateLimitingService.MAX_IMAGES_PER_USER, granted);
+        assertEquals(RateLimitingService.MAX_IMAGES_PER_USER, userService.getCurrentImageCount(userId));
+    }
+
+    @Test
+    void parallelBatchesAreAllOrNothing() throws Exception {
+        Long userId = createUser("batches").getId();
+
+        int granted = fireConcurrently(() ->
+                userService.tryIncrementImageCount(userId, 2, RateLimitingService.MAX_IMAGES_PER_USER));
+
+        // Two batches fit under the cap; a third would go over, so it gets nothing rather than one image
+        assertEquals(RateLimitingService.MAX_IMAGES_PER_USER / 2, granted);
+        assertEquals(RateLimitingService.MAX_IMAGES_PER_USER / 2 * 2, userService.getCurrentImageCount(userId));
+    }
+
+    private AppUser createUser(String uid) {
+        AppUser user = new AppUser();
+        user.setFirebaseUid(uid);
+        user.setEmail(uid + "@test.user");
+        user.setMessageCount(0);
+        user.setImageCount(0);
+        return userRepository.save(user);
+    }
+
+    private int fireConcurrently(Callable<Boolean> attempt) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return attempt.call();
+                }));
+            }
+            start.countDown();
+
+            int granted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(30, TimeUnit.SECONDS)) {
+                    granted++;
+                }
+            }
+            return granted;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}